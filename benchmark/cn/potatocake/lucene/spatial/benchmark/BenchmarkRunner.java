@@ -0,0 +1,97 @@
+package cn.potatocake.lucene.spatial.benchmark;
+
+import java.util.Locale;
+
+/**
+ * 简单的基准测试运行器：先预热若干轮，再测量若干轮，每轮持续固定时间，输出每次操作的平均耗时及各轮间的标准差
+ * <p>
+ * 每次操作的返回值累加到sink中并最终输出，防止被JIT当作无用代码消除
+ * <p>
+ * @author Potato-Cake（potato_cake@163.com）
+ */
+public class BenchmarkRunner {
+
+    private final int warmupIterations;
+    private final int measurementIterations;
+    private final long iterationNanos;
+    private long sink;
+
+    /**
+     * @param warmupIterations      预热轮数
+     * @param measurementIterations 测量轮数
+     * @param iterationMillis       每轮时长（毫秒）
+     */
+    public BenchmarkRunner(int warmupIterations, int measurementIterations, long iterationMillis) {
+        if (warmupIterations < 0 || measurementIterations <= 0 || iterationMillis <= 0) {
+            throw new IllegalArgumentException("invalid iterations: " + warmupIterations + ", " + measurementIterations
+                    + ", " + iterationMillis);
+        }
+        this.warmupIterations = warmupIterations;
+        this.measurementIterations = measurementIterations;
+        this.iterationNanos = iterationMillis * 1000000L;
+    }
+
+    public interface Task {
+
+        /**
+         * 执行一次操作
+         * <p>
+         * @return 任意结果值，用于防止无用代码消除
+         * @throws Exception
+         */
+        long run() throws Exception;
+    }
+
+    /**
+     * 运行并输出一行结果：名称、平均耗时（微秒/次）、标准差、测量轮总次数
+     * <p>
+     * @param name
+     * @param task
+     *             <p>
+     * @return 平均耗时（微秒/次）
+     * @throws Exception
+     */
+    public double run(String name, Task task) throws Exception {
+        for (int i = 0; i < warmupIterations; i++) {
+            iteration(task);
+        }
+        double[] micros = new double[measurementIterations];
+        long ops = 0;
+        for (int i = 0; i < measurementIterations; i++) {
+            long[] result = iteration(task);
+            micros[i] = result[1] / 1000.0 / result[0];
+            ops += result[0];
+        }
+        double mean = 0;
+        for (double m : micros) {
+            mean += m;
+        }
+        mean /= micros.length;
+        double variance = 0;
+        for (double m : micros) {
+            variance += (m - mean) * (m - mean);
+        }
+        double stddev = micros.length > 1 ? Math.sqrt(variance / (micros.length - 1)) : 0;
+        System.out.println(String.format(Locale.ROOT, "%-48s %12.3f us/op  +- %10.3f  (%d ops)", name, mean, stddev, ops));
+        return mean;
+    }
+
+    /**
+     * @return {操作次数, 耗时纳秒}
+     */
+    private long[] iteration(Task task) throws Exception {
+        long ops = 0;
+        long start = System.nanoTime();
+        long elapsed;
+        do {
+            sink += task.run();
+            ops++;
+            elapsed = System.nanoTime() - start;
+        } while (elapsed < iterationNanos);
+        return new long[]{ops, elapsed};
+    }
+
+    public long getSink() {
+        return sink;
+    }
+}
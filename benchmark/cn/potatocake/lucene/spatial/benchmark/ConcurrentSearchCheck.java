@@ -0,0 +1,196 @@
+package cn.potatocake.lucene.spatial.benchmark;
+
+import cn.potatocake.lucene.spatial.SpatialRelation;
+import cn.potatocake.lucene.spatial.geohash.GeohashTreeSpatialStrategy;
+import cn.potatocake.lucene.spatial.geohash.utils.GeometryMaker;
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Geometry;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.search.Filter;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.Version;
+
+/**
+ * 并发检查：同一过滤器、查询在IndexSearcher(reader, executor)中被多个线程同时用于不同的段，
+ * 结果须与单线程逐段执行一致，不一致时以非0状态退出
+ * <p>
+ * 每组查询图形、关系分别创建单线程使用及并发共用的过滤器，并发共用的过滤器首次执行即在多个线程中，
+ * 预处理图形中延迟生成的索引也在并发中生成。参数通过系统属性指定：
+ * <ul>
+ * <li>check.docs：文档数，默认20000，多边形及点各占一半</li>
+ * <li>check.segments：段数，默认8</li>
+ * <li>check.threads：线程数，默认4</li>
+ * <li>check.queries：查询图形数，默认32</li>
+ * <li>check.seed：随机种子，默认42</li>
+ * </ul>
+ * 运行方式见README
+ * <p>
+ * @author Potato-Cake（potato_cake@163.com）
+ */
+public class ConcurrentSearchCheck {
+
+    private static final double MIN_X = 115, MIN_Y = 39, WIDTH = 3, HEIGHT = 2; // 数据范围
+    private static final SpatialRelation[] RELATIONS = {SpatialRelation.INTERSECTS, SpatialRelation.CONTAINS,
+        SpatialRelation.WITHIN, SpatialRelation.DISJOINT};
+
+    private final GeohashTreeSpatialStrategy strategy = new GeohashTreeSpatialStrategy();
+    private final int docs = Integer.getInteger("check.docs", 20000);
+    private final int segments = Integer.getInteger("check.segments", 8);
+    private final int threads = Integer.getInteger("check.threads", 4);
+    private final int queries = Integer.getInteger("check.queries", 32);
+    private final long seed = Long.getLong("check.seed", 42);
+
+    public static void main(String[] args) throws Exception {
+        int mismatches = new ConcurrentSearchCheck().check();
+        System.out.println(mismatches == 0 ? "OK" : "FAILED: " + mismatches + " mismatches");
+        System.exit(mismatches == 0 ? 0 : 1);
+    }
+
+    /**
+     * @return 结果不一致的查询数
+     */
+    public int check() throws Exception {
+        Random random = new Random(seed);
+        IndexReader reader = index(random);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            IndexSearcher serial = new IndexSearcher(reader);
+            final IndexSearcher concurrent = new IndexSearcher(reader, executor);
+            System.out.println("docs=" + reader.maxDoc() + " segments=" + reader.leaves().size() + " threads=" + threads);
+            int mismatches = 0;
+            int checks = 0;
+            for (Geometry shape : queries(random)) {
+                for (SpatialRelation relation : RELATIONS) {
+                    int[] expected = search(serial, strategy.makeFilter(shape, relation));
+                    int[] expectedQuery = search(serial, strategy.makeQuery(shape, relation));
+                    if (!Arrays.equals(expected, expectedQuery)) {
+                        System.out.println("MISMATCH serial filter/query " + relation + " " + shape);
+                        mismatches++;
+                    }
+                    // 过滤器、查询均为首次执行，由多个调用线程及searcher的线程池同时使用
+                    final Filter filter = strategy.makeFilter(shape, relation);
+                    final Query query = strategy.makeQuery(shape, relation);
+                    List<Callable<int[]>> tasks = new ArrayList<>();
+                    for (int t = 0; t < threads; t++) {
+                        final boolean useQuery = (t & 1) == 1;
+                        tasks.add(new Callable<int[]>() {
+
+                            @Override
+                            public int[] call() throws IOException {
+                                return useQuery ? search(concurrent, query) : search(concurrent, filter);
+                            }
+                        });
+                    }
+                    ExecutorService callers = Executors.newFixedThreadPool(threads);
+                    try {
+                        for (Future<int[]> future : callers.invokeAll(tasks)) {
+                            checks++;
+                            if (!Arrays.equals(expected, future.get())) {
+                                System.out.println("MISMATCH concurrent " + relation + " expected=" + expected.length
+                                        + " got=" + future.get().length + " " + shape);
+                                mismatches++;
+                            }
+                        }
+                    } finally {
+                        callers.shutdown();
+                    }
+                }
+            }
+            System.out.println("checks=" + checks);
+            return mismatches;
+        } finally {
+            executor.shutdown();
+            reader.close();
+        }
+    }
+
+    private int[] search(IndexSearcher searcher, Filter filter) throws IOException {
+        return docIds(searcher.search(new MatchAllDocsQuery(), filter, Math.max(1, searcher.getIndexReader().maxDoc())));
+    }
+
+    private int[] search(IndexSearcher searcher, Query query) throws IOException {
+        return docIds(searcher.search(query, Math.max(1, searcher.getIndexReader().maxDoc())));
+    }
+
+    private static int[] docIds(TopDocs topDocs) {
+        int[] ids = new int[topDocs.scoreDocs.length];
+        int i = 0;
+        for (ScoreDoc sd : topDocs.scoreDocs) {
+            ids[i++] = sd.doc;
+        }
+        Arrays.sort(ids);
+        return ids;
+    }
+
+    private IndexReader index(Random random) throws IOException {
+        RAMDirectory directory = new RAMDirectory();
+        IndexWriterConfig config = new IndexWriterConfig(Version.LUCENE_4_9, null);
+        config.setMaxBufferedDocs(Math.max(2, docs / segments));
+        try (IndexWriter writer = new IndexWriter(directory, config)) {
+            for (int i = 0; i < docs; i++) {
+                double x = x(random), y = y(random);
+                Geometry shape = (i & 1) == 0 ? GeometryMaker.makePoint(x, y)
+                        : GeometryMaker.makeBuffer(GeometryMaker.makePoint(x, y), 0.2 + random.nextDouble() * 2);
+                Document doc = new Document();
+                for (Field field : strategy.createIndexableFields(shape)) {
+                    doc.add(field);
+                }
+                writer.addDocument(doc);
+            }
+        }
+        return DirectoryReader.open(directory);
+    }
+
+    /**
+     * 多边形、折线及矩形，多边形顶点较多，校验时需使用预处理图形的线段索引及点定位索引
+     */
+    private List<Geometry> queries(Random random) {
+        List<Geometry> shapes = new ArrayList<>();
+        for (int i = 0; i < queries; i++) {
+            double x = x(random), y = y(random);
+            switch (i % 3) {
+                case 0:
+                    shapes.add(GeometryMaker.makeBuffer(GeometryMaker.makePoint(x, y), 5 + random.nextDouble() * 25));
+                    break;
+                case 1:
+                    Coordinate[] coordinates = new Coordinate[16];
+                    for (int j = 0; j < coordinates.length; j++) {
+                        coordinates[j] = GeometryMaker.makeCoordinate(x + j * 0.02, y + (random.nextDouble() - 0.5) * 0.1);
+                    }
+                    shapes.add(GeometryMaker.makeLineString(coordinates));
+                    break;
+                default:
+                    double size = 0.01 + random.nextDouble() * 0.2;
+                    shapes.add(GeometryMaker.makeRectangle(x, x + size, y, y + size));
+            }
+        }
+        return shapes;
+    }
+
+    private static double x(Random random) {
+        return MIN_X + random.nextDouble() * WIDTH;
+    }
+
+    private static double y(Random random) {
+        return MIN_Y + random.nextDouble() * HEIGHT;
+    }
+}
@@ -0,0 +1,110 @@
+package cn.potatocake.lucene.spatial.benchmark;
+
+import cn.potatocake.lucene.spatial.geohash.GeohashTreeSpatialStrategy;
+import cn.potatocake.lucene.spatial.geohash.utils.Circle;
+import cn.potatocake.lucene.spatial.geohash.utils.DistanceUtils;
+import cn.potatocake.lucene.spatial.geohash.utils.GeometryMaker;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.Point;
+import java.io.IOException;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.search.FieldDoc;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.Version;
+
+/**
+ * 180度经线检查：圆心或查询点与文档图形分别位于180度经线两侧时，圆形查询及最近邻的结果须与实际距离一致，
+ * 不一致时以非0状态退出
+ * <p>
+ * 运行方式见README
+ * <p>
+ * @author Potato-Cake（potato_cake@163.com）
+ */
+public class DatelineCheck {
+
+    private final GeohashTreeSpatialStrategy strategy = new GeohashTreeSpatialStrategy();
+    private int failures;
+
+    public static void main(String[] args) throws Exception {
+        DatelineCheck check = new DatelineCheck();
+        check.checkCircle();
+        check.checkNearest();
+        System.out.println(check.failures == 0 ? "OK" : "FAILED: " + check.failures + " failures");
+        System.exit(check.failures == 0 ? 0 : 1);
+    }
+
+    private void expect(String name, boolean condition) {
+        System.out.println((condition ? "ok   " : "FAIL ") + name);
+        if (!condition) {
+            failures++;
+        }
+    }
+
+    /**
+     * 圆心在西经179.9度，线、面在东经170至179.99度，实际距离约12公里
+     */
+    private void checkCircle() throws Exception {
+        Circle near = new Circle(-179.9, 0, 50);
+        Circle far = new Circle(-179.9, 0, 5);
+        Geometry line = GeometryMaker.readWKT("LINESTRING (170 0, 179.99 0)");
+        Geometry polygon = GeometryMaker.readWKT("POLYGON ((170 -1, 179.99 -1, 179.99 1, 170 1, 170 -1))");
+        Geometry point = GeometryMaker.makePoint(179.99, 0.05);
+        expect("circle/line intersects", near.intersects(line));
+        expect("circle/polygon intersects", near.intersects(polygon));
+        expect("circle/point intersects", near.intersects(point));
+        expect("circle/line disjoint", !far.intersects(line));
+        expect("circle/polygon disjoint", !far.intersects(polygon));
+        // 圆心在东侧、图形在西侧
+        Geometry westLine = GeometryMaker.readWKT("LINESTRING (-179.99 0, -170 0)");
+        expect("circle/west line intersects", new Circle(179.9, 0, 50).intersects(westLine));
+
+        IndexSearcher searcher = index(line, polygon, point);
+        expect("filter/circle hits", hits(searcher, near) == 3);
+        expect("filter/circle no hits", hits(searcher, far) == 0);
+    }
+
+    /**
+     * 点到图形的距离及最近邻排序：西经179.9度的点到东经179.99度的线约12公里，比同侧1度外的线更近
+     */
+    private void checkNearest() throws Exception {
+        Point point = GeometryMaker.makePoint(-179.9, 0);
+        Geometry line = GeometryMaker.readWKT("LINESTRING (170 0, 179.99 0)");
+        Geometry polygon = GeometryMaker.readWKT("POLYGON ((170 -1, 179.99 -1, 179.99 1, 170 1, 170 -1))");
+        Geometry sameSide = GeometryMaker.readWKT("LINESTRING (-178.9 -1, -178.9 1)");
+        double expected = DistanceUtils.distanceKM(-179.9, 0, 179.99, 0);
+        expect("distance/line", Math.abs(DistanceUtils.distanceKM(point, line) - expected) < 1e-6);
+        expect("distance/polygon", Math.abs(DistanceUtils.distanceKM(point, polygon) - expected) < 1e-6);
+        expect("distance/inside polygon", DistanceUtils.distanceKM(GeometryMaker.makePoint(175, 0), polygon) == 0);
+
+        IndexSearcher searcher = index(sameSide, line);
+        TopDocs nearest = strategy.nearest(searcher, point, 2);
+        expect("nearest/order", nearest.scoreDocs.length == 2 && nearest.scoreDocs[0].doc == 1);
+        expect("nearest/distance", nearest.scoreDocs.length > 0
+                && Math.abs((Double) ((FieldDoc) nearest.scoreDocs[0]).fields[0] - expected) < 1e-6);
+    }
+
+    private int hits(IndexSearcher searcher, Circle circle) throws IOException {
+        return searcher.search(new MatchAllDocsQuery(), strategy.makeFilter(circle), 10).totalHits;
+    }
+
+    private IndexSearcher index(Geometry... shapes) throws IOException {
+        RAMDirectory directory = new RAMDirectory();
+        try (IndexWriter writer = new IndexWriter(directory, new IndexWriterConfig(Version.LUCENE_4_9, null))) {
+            for (Geometry shape : shapes) {
+                Document doc = new Document();
+                for (Field field : strategy.createIndexableFields(shape)) {
+                    doc.add(field);
+                }
+                writer.addDocument(doc);
+            }
+        }
+        return new IndexSearcher(DirectoryReader.open(directory));
+    }
+}
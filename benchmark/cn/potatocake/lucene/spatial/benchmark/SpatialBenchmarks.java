@@ -0,0 +1,327 @@
+package cn.potatocake.lucene.spatial.benchmark;
+
+import cn.potatocake.lucene.spatial.SpatialRelation;
+import cn.potatocake.lucene.spatial.geohash.GeohashTreeSpatialStrategy;
+import cn.potatocake.lucene.spatial.geohash.filter.AbstractSpatialFilter.Cover;
+import cn.potatocake.lucene.spatial.geohash.utils.Circle;
+import cn.potatocake.lucene.spatial.geohash.utils.GeometryMaker;
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.prep.PreparedGeometry;
+import com.vividsolutions.jts.geom.prep.PreparedGeometryFactory;
+import java.io.IOException;
+import java.util.Random;
+import java.util.regex.Pattern;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.search.Filter;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.Version;
+
+/**
+ * 基准测试：查询栅格生成、索引栅格TokenStream吞吐量、相交/包含/圆形过滤器在点及多边形数据集上的耗时
+ * <p>
+ * 数据及查询图形均由固定种子生成，同一参数下多次运行结果可比较。参数通过系统属性指定：
+ * <ul>
+ * <li>bench.docs：每个数据集的文档数，默认100000</li>
+ * <li>bench.seed：随机种子，默认42</li>
+ * <li>bench.warmup、bench.iterations、bench.time：预热轮数、测量轮数、每轮毫秒数，默认3、5、1000</li>
+ * <li>bench.include：只运行名称匹配该正则的场景，默认全部</li>
+ * <li>bench.docValues、bench.numericPoints：对应策略的同名设置，默认false</li>
+ * </ul>
+ * 运行方式见README
+ * <p>
+ * @author Potato-Cake（potato_cake@163.com）
+ */
+public class SpatialBenchmarks {
+
+    private static final int SHAPE_COUNT = 64; // 每个场景轮流使用的图形数
+    private static final double MIN_X = 115, MIN_Y = 39, WIDTH = 3, HEIGHT = 2; // 数据范围
+
+    private final GeohashTreeSpatialStrategy strategy = new GeohashTreeSpatialStrategy();
+    private final BenchmarkRunner runner;
+    private final Pattern include;
+    private final int docs;
+    private final long seed;
+
+    public SpatialBenchmarks() {
+        this.runner = new BenchmarkRunner(Integer.getInteger("bench.warmup", 3), Integer.getInteger("bench.iterations", 5),
+                Long.getLong("bench.time", 1000));
+        this.include = Pattern.compile(System.getProperty("bench.include", ".*"));
+        this.docs = Integer.getInteger("bench.docs", 100000);
+        this.seed = Long.getLong("bench.seed", 42);
+        strategy.setDocValues(Boolean.getBoolean("bench.docValues"));
+        strategy.setNumericPoints(Boolean.getBoolean("bench.numericPoints"));
+    }
+
+    public static void main(String[] args) throws Exception {
+        SpatialBenchmarks benchmarks = new SpatialBenchmarks();
+        benchmarks.coverBenchmarks();
+        benchmarks.tokenStreamBenchmarks();
+        benchmarks.filterBenchmarks();
+        System.out.println("sink=" + benchmarks.runner.getSink());
+    }
+
+    private boolean included(String name) {
+        return include.matcher(name).find();
+    }
+
+    private void coverBenchmarks() throws Exception {
+        Random random = new Random(seed);
+        runCover("cover/point", points(random, SHAPE_COUNT));
+        runCover("cover/line/10km", lines(random, SHAPE_COUNT, 0.1));
+        runCover("cover/line/100km", lines(random, SHAPE_COUNT, 1));
+        runCover("cover/polygon/1km", buffers(random, SHAPE_COUNT, 1));
+        runCover("cover/polygon/10km", buffers(random, SHAPE_COUNT, 10));
+        runCover("cover/polygon/50km", buffers(random, SHAPE_COUNT, 50));
+        runCircleCover("cover/circle/10km", circles(random, SHAPE_COUNT, 10));
+        runCircleCover("cover/circle/50km", circles(random, SHAPE_COUNT, 50));
+    }
+
+    /**
+     * 查询栅格生成，精度与makeFilter一致
+     */
+    private void runCover(String name, final Geometry[] shapes) throws Exception {
+        if (!included(name)) {
+            return;
+        }
+        final PreparedGeometry[] prepared = new PreparedGeometry[shapes.length];
+        for (int i = 0; i < shapes.length; i++) {
+            prepared[i] = PreparedGeometryFactory.prepare(shapes[i]);
+        }
+        final int minCharSize = strategy.getIndexMinCharSize();
+        runner.run(name, new BenchmarkRunner.Task() {
+
+            private int next;
+
+            @Override
+            public long run() {
+                int i = next++ % prepared.length;
+                return Cover.build(prepared[i], minCharSize, strategy.getCharSize(shapes[i]), strategy.getMaxCells())
+                        .getRanges().size();
+            }
+        });
+    }
+
+    /**
+     * 圆形查询栅格生成，精度与makeFilter(Circle)一致，与cover/polygon下的缓冲区多边形对比
+     */
+    private void runCircleCover(String name, final Circle[] circles) throws Exception {
+        if (!included(name)) {
+            return;
+        }
+        final int minCharSize = strategy.getIndexMinCharSize();
+        runner.run(name, new BenchmarkRunner.Task() {
+
+            private int next;
+
+            @Override
+            public long run() {
+                Circle circle = circles[next++ % circles.length];
+                return Cover.build(circle, minCharSize, strategy.getCharSize(GeometryMaker.toGeometry(circle.getBoundingBox())),
+                        strategy.getMaxCells()).getRanges().size();
+            }
+        });
+    }
+
+    private void tokenStreamBenchmarks() throws Exception {
+        Random random = new Random(seed + 1);
+        runTokenStream("tokenstream/point", points(random, SHAPE_COUNT));
+        runTokenStream("tokenstream/polygon/1km", buffers(random, SHAPE_COUNT, 1));
+        runTokenStream("tokenstream/polygon/10km", buffers(random, SHAPE_COUNT, 10));
+    }
+
+    /**
+     * 索引栅格生成及写出，即addDocument中栅格字段倒排前的全部工作
+     */
+    private void runTokenStream(String name, final Geometry[] shapes) throws Exception {
+        if (!included(name)) {
+            return;
+        }
+        runner.run(name, new BenchmarkRunner.Task() {
+
+            private int next;
+
+            @Override
+            public long run() throws IOException {
+                Geometry shape = shapes[next++ % shapes.length];
+                long tokens = 0;
+                for (Field field : strategy.createIndexableFields(shape)) {
+                    if (!GeohashTreeSpatialStrategy.CELL_FIELD_NAME.equals(field.name())) {
+                        continue;
+                    }
+                    try (TokenStream ts = field.tokenStream(null, null)) {
+                        ts.reset();
+                        while (ts.incrementToken()) {
+                            tokens++;
+                        }
+                        ts.end();
+                    }
+                }
+                return tokens;
+            }
+        });
+    }
+
+    private void filterBenchmarks() throws Exception {
+        if (!included("filter/")) {
+            return;
+        }
+        Random random = new Random(seed + 2);
+        IndexSearcher points = index(points(random, docs));
+        IndexSearcher polygons = index(buffers(random, docs, 0.2, 2));
+        Geometry[] small = rectangles(random, SHAPE_COUNT, 0.05);
+        Geometry[] medium = buffers(random, SHAPE_COUNT, 5);
+        Geometry[] large = buffers(random, SHAPE_COUNT, 30);
+        for (SpatialRelation relation : new SpatialRelation[]{SpatialRelation.INTERSECTS, SpatialRelation.CONTAINS}) {
+            String prefix = "filter/" + relation.name().toLowerCase() + "/";
+            runFilter(prefix + "points/rect5km", points, small, relation);
+            runFilter(prefix + "points/circle5km", points, medium, relation);
+            runFilter(prefix + "points/circle30km", points, large, relation);
+            runFilter(prefix + "polygons/rect5km", polygons, small, relation);
+            runFilter(prefix + "polygons/circle5km", polygons, medium, relation);
+            runFilter(prefix + "polygons/circle30km", polygons, large, relation);
+        }
+        Circle[] mediumCircles = circles(random, SHAPE_COUNT, 5);
+        Circle[] largeCircles = circles(random, SHAPE_COUNT, 30);
+        runCircleFilter("filter/circle/points/5km", points, mediumCircles);
+        runCircleFilter("filter/circle/points/30km", points, largeCircles);
+        runCircleFilter("filter/circle/polygons/5km", polygons, mediumCircles);
+        runCircleFilter("filter/circle/polygons/30km", polygons, largeCircles);
+    }
+
+    /**
+     * 过滤器执行耗时，过滤器预先创建，不含查询栅格生成
+     */
+    private void runFilter(String name, final IndexSearcher searcher, Geometry[] queries, SpatialRelation relation)
+            throws Exception {
+        if (!included(name)) {
+            return;
+        }
+        final Filter[] filters = new Filter[queries.length];
+        for (int i = 0; i < queries.length; i++) {
+            filters[i] = strategy.makeFilter(queries[i], relation);
+        }
+        runner.run(name, new BenchmarkRunner.Task() {
+
+            private int next;
+
+            @Override
+            public long run() throws IOException {
+                return searcher.search(new MatchAllDocsQuery(), filters[next++ % filters.length], 1).totalHits;
+            }
+        });
+    }
+
+    /**
+     * 圆形过滤器执行耗时，过滤器预先创建
+     */
+    private void runCircleFilter(String name, final IndexSearcher searcher, Circle[] circles) throws Exception {
+        if (!included(name)) {
+            return;
+        }
+        final Filter[] filters = new Filter[circles.length];
+        for (int i = 0; i < circles.length; i++) {
+            filters[i] = strategy.makeFilter(circles[i]);
+        }
+        runner.run(name, new BenchmarkRunner.Task() {
+
+            private int next;
+
+            @Override
+            public long run() throws IOException {
+                return searcher.search(new MatchAllDocsQuery(), filters[next++ % filters.length], 1).totalHits;
+            }
+        });
+    }
+
+    private IndexSearcher index(Geometry[] shapes) throws IOException {
+        RAMDirectory directory = new RAMDirectory();
+        try (IndexWriter writer = new IndexWriter(directory, new IndexWriterConfig(Version.LUCENE_4_9, null))) {
+            for (Geometry shape : shapes) {
+                Document doc = new Document();
+                for (Field field : strategy.createIndexableFields(shape)) {
+                    doc.add(field);
+                }
+                writer.addDocument(doc);
+            }
+            // 合并为单个段，段结构不随写入缓冲区变化，结果可比较
+            writer.forceMerge(1);
+        }
+        return new IndexSearcher(DirectoryReader.open(directory));
+    }
+
+    private static Geometry[] points(Random random, int count) {
+        Geometry[] shapes = new Geometry[count];
+        for (int i = 0; i < count; i++) {
+            shapes[i] = GeometryMaker.makePoint(x(random), y(random));
+        }
+        return shapes;
+    }
+
+    /**
+     * @param length 线段长度（度）
+     */
+    private static Geometry[] lines(Random random, int count, double length) {
+        Geometry[] shapes = new Geometry[count];
+        for (int i = 0; i < count; i++) {
+            double x = x(random), y = y(random), angle = random.nextDouble() * 2 * Math.PI;
+            shapes[i] = GeometryMaker.makeLineString(new Coordinate[]{GeometryMaker.makeCoordinate(x, y),
+                GeometryMaker.makeCoordinate(x + length * Math.cos(angle), y + length * Math.sin(angle))});
+        }
+        return shapes;
+    }
+
+    /**
+     * @param size 矩形边长（度）
+     */
+    private static Geometry[] rectangles(Random random, int count, double size) {
+        Geometry[] shapes = new Geometry[count];
+        for (int i = 0; i < count; i++) {
+            double x = x(random), y = y(random);
+            shapes[i] = GeometryMaker.makeRectangle(x, x + size, y, y + size);
+        }
+        return shapes;
+    }
+
+    /**
+     * @param radius 半径（公里）
+     */
+    private static Geometry[] buffers(Random random, int count, double radius) {
+        return buffers(random, count, radius, radius);
+    }
+
+    private static Geometry[] buffers(Random random, int count, double minRadius, double maxRadius) {
+        Geometry[] shapes = new Geometry[count];
+        for (int i = 0; i < count; i++) {
+            double radius = minRadius + random.nextDouble() * (maxRadius - minRadius);
+            shapes[i] = GeometryMaker.makeBuffer(GeometryMaker.makePoint(x(random), y(random)), radius);
+        }
+        return shapes;
+    }
+
+    /**
+     * @param radius 半径（公里）
+     */
+    private static Circle[] circles(Random random, int count, double radius) {
+        Circle[] circles = new Circle[count];
+        for (int i = 0; i < count; i++) {
+            circles[i] = GeometryMaker.makeCircle(x(random), y(random), radius);
+        }
+        return circles;
+    }
+
+    private static double x(Random random) {
+        return MIN_X + random.nextDouble() * WIDTH;
+    }
+
+    private static double y(Random random) {
+        return MIN_Y + random.nextDouble() * HEIGHT;
+    }
+}
@@ -0,0 +1,186 @@
+package cn.potatocake.lucene.spatial;
+
+import com.vividsolutions.jts.geom.Geometry;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.util.ThreadInterruptedException;
+
+/**
+ * 并行批量索引，图形栅格生成及文档写入均在线程池中进行
+ * <p>
+ * 栅格在线程池中由SpatialStrategy.createPrecomputedFields()全部生成后才写入，IndexWriter只做倒排，
+ * 栅格计算的并行度由线程池决定，不受IndexWriterConfig.maxThreadStates限制；
+ * 未写完的文档数达到上限时add()阻塞，生产者不会因读取过快而占满内存。
+ * 任一文档写入失败后不再写入新文档，之后的add()、finish()抛出该异常。
+ * add()与close()互斥：close()开始后的add()抛出IllegalStateException，之前提交的文档全部写完close()才返回
+ * <p>
+ * @author Potato-Cake（potato_cake@163.com）
+ */
+public class SpatialIndexer implements Closeable {
+
+    private static final int PENDING_PER_THREAD = 64;
+    private final SpatialStrategy strategy;
+    private final IndexWriter writer;
+    private final ForkJoinPool pool;
+    private final boolean ownPool; // 线程池由本类创建，关闭时一并关闭
+    private final int maxPending;
+    private final Semaphore pending;
+    private final AtomicLong indexedCount = new AtomicLong();
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+    private final ReadWriteLock closeLock = new ReentrantReadWriteLock(); // 多个add()可并发，close()独占
+    private boolean closed;
+
+    /**
+     * 线程数为CPU核数
+     */
+    public SpatialIndexer(SpatialStrategy strategy, IndexWriter writer) {
+        this(strategy, writer, Runtime.getRuntime().availableProcessors());
+    }
+
+    public SpatialIndexer(SpatialStrategy strategy, IndexWriter writer, int threads) {
+        this(strategy, writer, new ForkJoinPool(threads), true, threads * PENDING_PER_THREAD);
+    }
+
+    /**
+     * 使用外部线程池，关闭时不关闭线程池
+     * <p>
+     * @param strategy
+     * @param writer
+     * @param pool
+     * @param maxPending 未写完的文档数上限
+     */
+    public SpatialIndexer(SpatialStrategy strategy, IndexWriter writer, ForkJoinPool pool, int maxPending) {
+        this(strategy, writer, pool, false, maxPending);
+    }
+
+    private SpatialIndexer(SpatialStrategy strategy, IndexWriter writer, ForkJoinPool pool, boolean ownPool,
+            int maxPending) {
+        if (strategy == null || writer == null || pool == null) {
+            throw new NullPointerException();
+        }
+        if (maxPending <= 0) {
+            throw new IllegalArgumentException("maxPending must be positive: " + maxPending);
+        }
+        this.strategy = strategy;
+        this.writer = writer;
+        this.pool = pool;
+        this.ownPool = ownPool;
+        this.maxPending = maxPending;
+        this.pending = new Semaphore(maxPending);
+    }
+
+    /**
+     * 将图形字段加入文档并写入索引，在线程池中执行，调用后不可再修改文档
+     * <p>
+     * @param doc   文档的其他字段
+     * @param shape
+     *              <p>
+     * @throws IOException 之前的文档写入失败
+     */
+    public void add(final Document doc, final Geometry shape) throws IOException {
+        closeLock.readLock().lock();
+        try {
+            if (closed) {
+                throw new IllegalStateException("indexer is closed");
+            }
+            checkFailure();
+            try {
+                pending.acquire();
+            } catch (InterruptedException e) {
+                throw new ThreadInterruptedException(e);
+            }
+            try {
+                pool.execute(new Runnable() {
+
+                    @Override
+                    public void run() {
+                        try {
+                            if (failure.get() == null) {
+                                for (Field f : strategy.createPrecomputedFields(shape)) {
+                                    doc.add(f);
+                                }
+                                writer.addDocument(doc);
+                                indexedCount.incrementAndGet();
+                            }
+                        } catch (Throwable t) {
+                            failure.compareAndSet(null, t);
+                        } finally {
+                            pending.release();
+                        }
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                pending.release();
+                throw e;
+            }
+        } finally {
+            closeLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 等待已提交的文档全部写入，不提交IndexWriter
+     * <p>
+     * @throws IOException 有文档写入失败
+     */
+    public void finish() throws IOException {
+        try {
+            pending.acquire(maxPending);
+        } catch (InterruptedException e) {
+            throw new ThreadInterruptedException(e);
+        }
+        pending.release(maxPending);
+        checkFailure();
+    }
+
+    private void checkFailure() throws IOException {
+        Throwable t = failure.get();
+        if (t == null) {
+            return;
+        }
+        if (t instanceof Error) {
+            throw (Error) t;
+        }
+        throw new IOException("bulk indexing failed", t);
+    }
+
+    /**
+     * 已写入的文档数
+     */
+    public long getIndexedCount() {
+        return indexedCount.get();
+    }
+
+    /**
+     * 等待已提交的文档全部写入，不关闭IndexWriter；之后的add()抛出IllegalStateException
+     */
+    @Override
+    public void close() throws IOException {
+        closeLock.writeLock().lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        } finally {
+            closeLock.writeLock().unlock();
+        }
+        try {
+            finish();
+        } finally {
+            if (ownPool) {
+                pool.shutdown();
+            }
+        }
+    }
+}
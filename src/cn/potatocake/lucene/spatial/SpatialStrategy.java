@@ -24,7 +24,19 @@ public abstract class SpatialStrategy {
     public abstract Field[] createIndexableFields(Geometry shape);
 
     /**
-     * 根据图形创建距离排序，（未实现）
+     * 同createIndexableFields，但需要计算的索引项（如栅格）在返回前全部生成，写入索引时只需倒排；
+     * 用于在IndexWriter之外的线程中完成图形计算，默认与createIndexableFields相同
+     * <p>
+     * @param shape
+     *              <p>
+     * @return
+     */
+    public Field[] createPrecomputedFields(Geometry shape) {
+        return createIndexableFields(shape);
+    }
+
+    /**
+     * 根据图形创建距离排序
      * <p>
      * @param queryShape
      *                   <p>
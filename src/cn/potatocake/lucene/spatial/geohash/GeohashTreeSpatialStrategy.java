@@ -2,23 +2,47 @@ package cn.potatocake.lucene.spatial.geohash;
 
 import cn.potatocake.lucene.spatial.SpatialRelation;
 import cn.potatocake.lucene.spatial.SpatialStrategy;
-import cn.potatocake.lucene.spatial.geohash.filter.AbstractSpatialFilter.TokenTree;
+import cn.potatocake.lucene.spatial.geohash.filter.AbstractSpatialFilter;
+import cn.potatocake.lucene.spatial.geohash.filter.AbstractSpatialFilter.Cover;
+import cn.potatocake.lucene.spatial.geohash.filter.CircleSpatialFilter;
 import cn.potatocake.lucene.spatial.geohash.filter.ContainsSpatialFilter;
+import cn.potatocake.lucene.spatial.geohash.filter.CoverCache;
 import cn.potatocake.lucene.spatial.geohash.filter.DisjointSpatialFilter;
+import cn.potatocake.lucene.spatial.geohash.filter.FilterStatsListener;
 import cn.potatocake.lucene.spatial.geohash.filter.IntersectsSpatialFilter;
+import cn.potatocake.lucene.spatial.geohash.filter.SpatialQuery;
 import cn.potatocake.lucene.spatial.geohash.filter.WithinSpatialFilter;
+import cn.potatocake.lucene.spatial.geohash.function.DistanceValueSource;
 import cn.potatocake.lucene.spatial.geohash.tree.Cell;
 import cn.potatocake.lucene.spatial.geohash.tree.GeometryCell;
+import cn.potatocake.lucene.spatial.geohash.utils.Circle;
+import cn.potatocake.lucene.spatial.geohash.utils.GeoHashUtils;
+import cn.potatocake.lucene.spatial.geohash.utils.GeometryMaker;
+import com.vividsolutions.jts.geom.Envelope;
 import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.Point;
+import com.vividsolutions.jts.geom.prep.PreparedGeometry;
+import com.vividsolutions.jts.geom.prep.PreparedGeometryFactory;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 import org.apache.lucene.analysis.TokenStream;
 import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.document.BinaryDocValuesField;
 import org.apache.lucene.document.Field;
 import org.apache.lucene.document.FieldType;
+import org.apache.lucene.document.LongField;
+import org.apache.lucene.document.NumericDocValuesField;
 import org.apache.lucene.document.StringField;
 import org.apache.lucene.index.FieldInfo;
 import org.apache.lucene.queries.function.ValueSource;
 import org.apache.lucene.search.Filter;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.BytesRef;
 
 /**
  * 基于Geohash的空间策略实现类
@@ -30,8 +54,21 @@ public class GeohashTreeSpatialStrategy extends SpatialStrategy {
     public static final String FIELD_NAME = "_______SHAPE";
     public static final String CELL_FIELD_NAME = FIELD_NAME + "___CELL___"; // 栅格索引名称
     public static final String SHAPE_FIELD_NAME = FIELD_NAME + "___WKT___"; // 图形索引名称
+    public static final String SHAPE_DV_FIELD_NAME = FIELD_NAME + "___WKB___"; // 图形二进制DocValues名称
+    public static final String CENTER_X_FIELD_NAME = FIELD_NAME + "___X___"; // 图形中心点经度DocValues名称
+    public static final String CENTER_Y_FIELD_NAME = FIELD_NAME + "___Y___"; // 图形中心点纬度DocValues名称
+    public static final String MIN_X_FIELD_NAME = FIELD_NAME + "___MINX___"; // 图形外包矩形DocValues名称
+    public static final String MAX_X_FIELD_NAME = FIELD_NAME + "___MAXX___";
+    public static final String MIN_Y_FIELD_NAME = FIELD_NAME + "___MINY___";
+    public static final String MAX_Y_FIELD_NAME = FIELD_NAME + "___MAXY___";
+    public static final String POINT_FIELD_NAME = FIELD_NAME + "___POINT___"; // 数值点索引名称
+    public static final int POINT_PRECISION_STEP = GeoHashUtils.BASE32_BITS; // 数值点索引精度步长，每级对应一个geohash字符
+
+    public static final double DEFAULT_DIST_ERR_PCT = 0.025; // 默认栅格误差比例
+    public static final int NEAREST_CHAR_SIZE = 6; // 最近邻查找的起始栅格精度
 
     private static final FieldType FIELD_CELL_TYPE = new FieldType();
+    private static final FieldType FIELD_POINT_TYPE = new FieldType();
 
     static {
         FIELD_CELL_TYPE.setIndexed(true);
@@ -40,41 +77,402 @@ public class GeohashTreeSpatialStrategy extends SpatialStrategy {
         FIELD_CELL_TYPE.setStored(false);
         FIELD_CELL_TYPE.setIndexOptions(FieldInfo.IndexOptions.DOCS_ONLY);
         FIELD_CELL_TYPE.freeze();
+        FIELD_POINT_TYPE.setIndexed(true);
+        FIELD_POINT_TYPE.setTokenized(true);
+        FIELD_POINT_TYPE.setOmitNorms(true);
+        FIELD_POINT_TYPE.setStored(false);
+        FIELD_POINT_TYPE.setIndexOptions(FieldInfo.IndexOptions.DOCS_ONLY);
+        FIELD_POINT_TYPE.setNumericType(FieldType.NumericType.LONG);
+        FIELD_POINT_TYPE.setNumericPrecisionStep(POINT_PRECISION_STEP);
+        FIELD_POINT_TYPE.freeze();
     }
 
+    private boolean storeWKT = true; // 是否以WKT格式保存图形
+    private boolean docValues = false; // 是否以WKB格式写入BinaryDocValues
+    private boolean centerDocValues = true; // 是否将图形中心点写入NumericDocValues，用于距离排序
+    private boolean envelopeDocValues = true; // 是否将图形外包矩形写入NumericDocValues，校验图形前先比较外包矩形
+    private boolean numericPoints = false; // 点是否以数值索引，校验时直接比较DocValues中的经纬度
+    private boolean collapseContained = true; // 被图形包含的栅格合并到完全包含的最粗精度，不受minCharSize限制
+    private int minCharSize = GeometryCell.MIN_CHAR_SIZE; // 边界栅格最粗精度，不合并时也是被图形包含的栅格最粗精度
+    private int maxCharSize = GeometryCell.MAX_CHAR_SIZE; // 图形边界栅格最细精度
+    private int pointCharSize = GeometryCell.POINT_CHAR_SIZE; // 点栅格精度
+    private double distErrPct = DEFAULT_DIST_ERR_PCT; // 边界栅格大小与图形大小之比
+    private int maxCells = 0; // 查询栅格数上限，为0时不限制
+    private CoverCache coverCache; // 查询栅格缓存，为空时不缓存
+    private boolean filterStatsEnabled; // 过滤器是否累计执行统计
+    private FilterStatsListener filterStatsListener; // 过滤器执行监听器，为空时不计时
+
     @Override
     public Field[] createIndexableFields(Geometry shape) {
-        Field cellField = new Field(CELL_FIELD_NAME,
-                new CellTokenStream(GeometryCell.getGeometryCell(shape)), FIELD_CELL_TYPE);
-        Field shapeField = new StringField(SHAPE_FIELD_NAME, shape.toText(), Field.Store.YES);
-        return new Field[]{cellField, shapeField};
+        return createFields(shape, false);
     }
 
+    /**
+     * 栅格在返回前全部生成并编码为索引项，IndexWriter倒排时不再计算栅格
+     */
+    @Override
+    public Field[] createPrecomputedFields(Geometry shape) {
+        return createFields(shape, true);
+    }
+
+    private Field[] createFields(Geometry shape, boolean precompute) {
+        if (!storeWKT && !docValues) {
+            throw new IllegalStateException("At least one of storeWKT and docValues must be enabled");
+        }
+        List<Field> fields = new ArrayList<>(9);
+        boolean numericPoint = numericPoints && shape instanceof Point && !shape.isEmpty();
+        if (numericPoint) {
+            Point point = (Point) shape;
+            long bits = GeoHashUtils.encode(point.getY(), point.getX(), GeoHashUtils.MAX_CHAR_SIZE);
+            fields.add(new LongField(POINT_FIELD_NAME, GeoHashUtils.ord(bits, GeoHashUtils.MAX_CHAR_SIZE), FIELD_POINT_TYPE));
+        } else {
+            GeometryCell cells = getGeometryCell(PreparedGeometryFactory.prepare(shape));
+            fields.add(new Field(CELL_FIELD_NAME,
+                    precompute ? CellTokenStream.precompute(cells) : new CellTokenStream(cells), FIELD_CELL_TYPE));
+        }
+        if (storeWKT) {
+            fields.add(new StringField(SHAPE_FIELD_NAME, shape.toText(), Field.Store.YES));
+        }
+        if (docValues) {
+            fields.add(new BinaryDocValuesField(SHAPE_DV_FIELD_NAME, new BytesRef(GeometryMaker.toWKB(shape))));
+        }
+        if ((centerDocValues || numericPoint) && !shape.isEmpty()) {
+            Point center = shape instanceof Point ? (Point) shape : shape.getCentroid();
+            fields.add(new NumericDocValuesField(CENTER_X_FIELD_NAME, Double.doubleToRawLongBits(center.getX())));
+            fields.add(new NumericDocValuesField(CENTER_Y_FIELD_NAME, Double.doubleToRawLongBits(center.getY())));
+        }
+        // 数值点直接按中心点校验，无需外包矩形
+        if (envelopeDocValues && !numericPoint && !shape.isEmpty()) {
+            Envelope envelope = shape.getEnvelopeInternal();
+            fields.add(new NumericDocValuesField(MIN_X_FIELD_NAME, Double.doubleToRawLongBits(envelope.getMinX())));
+            fields.add(new NumericDocValuesField(MAX_X_FIELD_NAME, Double.doubleToRawLongBits(envelope.getMaxX())));
+            fields.add(new NumericDocValuesField(MIN_Y_FIELD_NAME, Double.doubleToRawLongBits(envelope.getMinY())));
+            fields.add(new NumericDocValuesField(MAX_Y_FIELD_NAME, Double.doubleToRawLongBits(envelope.getMaxY())));
+        }
+        return fields.toArray(new Field[fields.size()]);
+    }
+
+    public boolean isStoreWKT() {
+        return storeWKT;
+    }
+
+    /**
+     * 设置是否保存WKT字段，关闭后无法通过GeometryMaker.fromDocument获取图形
+     * <p>
+     * @param storeWKT
+     */
+    public void setStoreWKT(boolean storeWKT) {
+        this.storeWKT = storeWKT;
+    }
+
+    public boolean isDocValues() {
+        return docValues;
+    }
+
+    /**
+     * 设置是否将图形以WKB格式写入BinaryDocValues，开启后过滤器校验图形时优先读取DocValues
+     * <p>
+     * @param docValues
+     */
+    public void setDocValues(boolean docValues) {
+        this.docValues = docValues;
+    }
+
+    public boolean isCenterDocValues() {
+        return centerDocValues;
+    }
+
+    /**
+     * 设置是否将图形中心点写入NumericDocValues，关闭后makeDistanceValueSource对新文档取最大距离
+     * <p>
+     * @param centerDocValues
+     */
+    public void setCenterDocValues(boolean centerDocValues) {
+        this.centerDocValues = centerDocValues;
+    }
+
+    public boolean isEnvelopeDocValues() {
+        return envelopeDocValues;
+    }
+
+    /**
+     * 设置是否将图形外包矩形写入NumericDocValues，开启后过滤器先比较外包矩形，不满足条件的文档不再读取图形
+     * <p>
+     * @param envelopeDocValues
+     */
+    public void setEnvelopeDocValues(boolean envelopeDocValues) {
+        this.envelopeDocValues = envelopeDocValues;
+    }
+
+    public boolean isCollapseContained() {
+        return collapseContained;
+    }
+
+    /**
+     * 设置是否合并被图形包含的栅格（默认开启）：开启时被图形完全包含的栅格以能完全包含的最粗精度索引，
+     * 只有边界栅格使用细精度，大图形的索引项数显著减少；关闭时被包含栅格最粗为minCharSize。
+     * <p>
+     * 查询时从1位前缀开始查找较粗的索引项，开启前建立的索引仍可正确查询；
+     * 关闭后查询不再查找比minCharSize粗的索引项，开启时建立的索引需重建
+     * <p>
+     * @param collapseContained
+     */
+    public void setCollapseContained(boolean collapseContained) {
+        this.collapseContained = collapseContained;
+    }
+
+    public boolean isNumericPoints() {
+        return numericPoints;
+    }
+
+    /**
+     * 设置点是否以数值方式索引：以12位geohash对应的Z序值建立数值索引（每级5位），经纬度写入DocValues，
+     * 校验点时直接比较坐标，不解析图形；点的中心点DocValues总是写入
+     * <p>
+     * @param numericPoints
+     */
+    public void setNumericPoints(boolean numericPoints) {
+        this.numericPoints = numericPoints;
+    }
+
+    /**
+     * 根据图形大小计算边界栅格精度：栅格宽、高不超过图形外包矩形半对角线的distErrPct倍，并限制在[minCharSize, maxCharSize]内，点固定使用pointCharSize
+     * <p>
+     * @param shape
+     *              <p>
+     * @return
+     */
+    public int getCharSize(Geometry shape) {
+        if (shape instanceof Point) {
+            return pointCharSize;
+        }
+        return getCharSize(shape.getEnvelopeInternal());
+    }
+
+    private int getCharSize(Envelope envelope) {
+        double distErr = distErrPct * Math.hypot(envelope.getWidth(), envelope.getHeight()) / 2;
+        int charSize = GeoHashUtils.lookupCharSize(distErr, distErr);
+        return Math.max(minCharSize, Math.min(maxCharSize, charSize));
+    }
+
+    private GeometryCell getGeometryCell(PreparedGeometry prepared) {
+        return GeometryCell.getGeometryCell(prepared, collapseContained ? 1 : minCharSize,
+                getCharSize(prepared.getGeometry()));
+    }
+
+    /**
+     * 索引中最粗的栅格精度：索引中可能同时存在点栅格与图形栅格，取两者中较粗的精度，合并包含栅格时为1；
+     * makeFilter、makeQuery生成查询栅格时以此为最粗精度
+     */
+    public int getIndexMinCharSize() {
+        return collapseContained ? 1 : Math.min(minCharSize, pointCharSize);
+    }
+
+    public int getMinCharSize() {
+        return minCharSize;
+    }
+
+    public int getMaxCharSize() {
+        return maxCharSize;
+    }
+
+    /**
+     * 设置栅格精度范围，边界栅格在[minCharSize, maxCharSize]内，不合并被包含栅格时被图形包含的栅格最粗为minCharSize
+     * <p>
+     * @param minCharSize
+     * @param maxCharSize
+     */
+    public void setCharSize(int minCharSize, int maxCharSize) {
+        if (minCharSize < 1 || minCharSize > maxCharSize || maxCharSize > GeoHashUtils.MAX_CHAR_SIZE) {
+            throw new IllegalArgumentException("Invalid char size range: [" + minCharSize + ", " + maxCharSize + "]");
+        }
+        this.minCharSize = minCharSize;
+        this.maxCharSize = maxCharSize;
+    }
+
+    public int getPointCharSize() {
+        return pointCharSize;
+    }
+
+    public void setPointCharSize(int pointCharSize) {
+        if (pointCharSize < 1 || pointCharSize > GeoHashUtils.MAX_CHAR_SIZE) {
+            throw new IllegalArgumentException("Invalid point char size: " + pointCharSize);
+        }
+        this.pointCharSize = pointCharSize;
+    }
+
+    public double getDistErrPct() {
+        return distErrPct;
+    }
+
+    /**
+     * 设置栅格误差比例，取值[0, 0.5]，越小边界栅格越细，为0时总是使用maxCharSize
+     * <p>
+     * @param distErrPct
+     */
+    public void setDistErrPct(double distErrPct) {
+        if (distErrPct < 0 || distErrPct > 0.5) {
+            throw new IllegalArgumentException("distErrPct must be between 0 and 0.5: " + distErrPct);
+        }
+        this.distErrPct = distErrPct;
+    }
+
+    public int getMaxCells() {
+        return maxCells;
+    }
+
+    /**
+     * 设置查询栅格数上限，为0时不限制（默认）
+     * <p>
+     * 查询图形按精度生成的栅格数超过上限时，边界栅格逐级降低一位精度重新生成，
+     * 粗栅格多出的候选文档在校验阶段排除，结果不变；用于限制大图形、细精度查询生成栅格的耗时及内存
+     * <p>
+     * @param maxCells
+     */
+    public void setMaxCells(int maxCells) {
+        if (maxCells < 0) {
+            throw new IllegalArgumentException("maxCells must not be negative: " + maxCells);
+        }
+        this.maxCells = maxCells;
+    }
+
+    public CoverCache getCoverCache() {
+        return coverCache;
+    }
+
+    /**
+     * 设置查询栅格缓存的内存上限（字节），相同图形及精度的查询共用已生成的栅格，为0时关闭缓存
+     * <p>
+     * @param maxRamBytes
+     */
+    public void setCoverCacheSize(long maxRamBytes) {
+        if (maxRamBytes < 0) {
+            throw new IllegalArgumentException("Invalid cover cache size: " + maxRamBytes);
+        }
+        this.coverCache = maxRamBytes == 0 ? null : new CoverCache(maxRamBytes);
+    }
+
+    public boolean isFilterStatsEnabled() {
+        return filterStatsEnabled;
+    }
+
+    /**
+     * 之后创建的过滤器是否累计执行统计（见AbstractSpatialFilter.getStats()），默认不累计；设置了监听器时总是累计
+     * <p>
+     * @param filterStatsEnabled
+     */
+    public void setFilterStatsEnabled(boolean filterStatsEnabled) {
+        this.filterStatsEnabled = filterStatsEnabled;
+    }
+
+    public FilterStatsListener getFilterStatsListener() {
+        return filterStatsListener;
+    }
+
+    /**
+     * 设置过滤器执行监听器，之后创建的过滤器在每个段遍历结束后通知监听器，可用于记录慢查询原因；
+     * 为null时不计时，开启统计时只累计各项计数（见setFilterStatsEnabled）
+     * <p>
+     * @param filterStatsListener
+     */
+    public void setFilterStatsListener(FilterStatsListener filterStatsListener) {
+        this.filterStatsListener = filterStatsListener;
+    }
+
+    /**
+     * 距离为查询图形中心点到文档图形中心点的球面距离（公里），文档中心点从DocValues读取
+     * <p>
+     * @param queryShape
+     *                   <p>
+     * @return
+     */
     @Override
     public ValueSource makeDistanceValueSource(Geometry queryShape) {
-        throw new UnsupportedOperationException("Not supported yet.");
+        return new DistanceValueSource(queryShape instanceof Point ? (Point) queryShape : queryShape.getCentroid());
+    }
+
+    /**
+     * 查找距离指定点最近的k个文档，从点所在栅格逐圈向外扩展，只计算附近文档的距离
+     * <p>
+     * @param searcher
+     * @param point
+     * @param k
+     *                 <p>
+     * @return 按距离升序排列，FieldDoc.fields[0]为点到文档图形的距离（公里）
+     * @throws IOException
+     */
+    public TopDocs nearest(IndexSearcher searcher, Point point, int k) throws IOException {
+        if (k <= 0) {
+            throw new IllegalArgumentException("k must be positive: " + k);
+        }
+        return new NearestNeighbourSearch(searcher, point, k, getIndexMinCharSize())
+                .search(Math.min(pointCharSize, NEAREST_CHAR_SIZE));
     }
 
     @Override
     public Filter makeFilter(Geometry queryShape, SpatialRelation relation) {
-        TokenTree tokenTree = new TokenTree();
-        GeometryCell geometryCell = GeometryCell.getGeometryCell(queryShape);
-        while (geometryCell.hasNext()) {
-            Cell cell = geometryCell.next();
-            tokenTree.setToken(cell.getBytes(), cell.getShapeRel());
+        return makeSpatialFilter(queryShape, relation);
+    }
+
+    /**
+     * 创建两阶段图形查询，边界栅格中的文档在查询迭代到时才校验图形
+     */
+    @Override
+    public Query makeQuery(Geometry queryShape, SpatialRelation relation) {
+        return new SpatialQuery(makeSpatialFilter(queryShape, relation));
+    }
+
+    /**
+     * 创建圆形过滤器，命中与圆心球面距离不超过半径的文档，栅格及校验均按球面距离计算，不生成缓冲区多边形；
+     * 圆形的查询栅格不放入查询栅格缓存
+     * <p>
+     * @param circle
+     *               <p>
+     * @return
+     */
+    public Filter makeFilter(Circle circle) {
+        return makeCircleFilter(circle);
+    }
+
+    /**
+     * 创建圆形的两阶段查询，见makeFilter(Circle)
+     */
+    public Query makeQuery(Circle circle) {
+        return new SpatialQuery(makeCircleFilter(circle));
+    }
+
+    private CircleSpatialFilter makeCircleFilter(Circle circle) {
+        Cover cover = Cover.build(circle, getIndexMinCharSize(), getCharSize(circle.getBoundingBox()), maxCells);
+        CircleSpatialFilter circleFilter = new CircleSpatialFilter(circle, cover);
+        circleFilter.setStatsEnabled(filterStatsEnabled);
+        circleFilter.setListener(filterStatsListener);
+        return circleFilter;
+    }
+
+    private AbstractSpatialFilter makeSpatialFilter(Geometry queryShape, SpatialRelation relation) {
+        int indexMinCharSize = getIndexMinCharSize();
+        int queryCharSize = getCharSize(queryShape);
+        PreparedGeometry prepared = PreparedGeometryFactory.prepare(queryShape);
+        Cover cover;
+        if (coverCache != null) {
+            cover = coverCache.getCover(prepared, indexMinCharSize, queryCharSize, maxCells);
+        } else {
+            cover = Cover.build(prepared, indexMinCharSize, queryCharSize, maxCells);
         }
-        Filter shapFilter = null;
+        AbstractSpatialFilter shapFilter = null;
         if (relation == SpatialRelation.WITHIN) {
-            shapFilter = new WithinSpatialFilter(queryShape);
+            shapFilter = new WithinSpatialFilter(prepared, cover);
         } else if (relation == SpatialRelation.CONTAINS) {
-            shapFilter = new ContainsSpatialFilter(queryShape);
+            shapFilter = new ContainsSpatialFilter(prepared, cover);
         } else if (relation == SpatialRelation.INTERSECTS) {
-            shapFilter = new IntersectsSpatialFilter(queryShape);
+            shapFilter = new IntersectsSpatialFilter(prepared, cover);
         } else if (relation == SpatialRelation.DISJOINT) {
-            shapFilter = new DisjointSpatialFilter(queryShape);
+            shapFilter = new DisjointSpatialFilter(prepared, cover);
         } else {
             throw new UnsupportedOperationException("Not supported yet.");
         }
+        shapFilter.setStatsEnabled(filterStatsEnabled);
+        shapFilter.setListener(filterStatsListener);
         return shapFilter;
     }
 
@@ -83,17 +481,73 @@ public class GeohashTreeSpatialStrategy extends SpatialStrategy {
         private final CharTermAttribute termAtt = addAttribute(CharTermAttribute.class);
 
         private Iterator<Cell> iter = null;
+        private char[] chars; // 预先生成的索引项，依次排列
+        private int[] ends; // 各索引项在chars中的结束位置
+        private int count;
+        private int index;
+        private int offset;
 
         public CellTokenStream(Iterator<Cell> tokens) {
             this.iter = tokens;
         }
 
+        private CellTokenStream(char[] chars, int[] ends, int count) {
+            this.chars = chars;
+            this.ends = ends;
+            this.count = count;
+        }
+
+        /**
+         * 生成全部栅格并编码为索引项，之后倒排时只复制字符
+         * <p>
+         * @param tokens
+         *               <p>
+         * @return
+         */
+        static CellTokenStream precompute(Iterator<Cell> tokens) {
+            char[] chars = new char[64];
+            int[] ends = new int[8];
+            int count = 0;
+            int length = 0;
+            while (tokens.hasNext()) {
+                Cell cell = tokens.next();
+                chars = ArrayUtil.grow(chars, length + cell.getCharSize() + 1);
+                length += cell.toChars(chars, length);
+                chars[length++] = (char) cell.getShapeRel();
+                ends = ArrayUtil.grow(ends, count + 1);
+                ends[count++] = length;
+            }
+            return new CellTokenStream(chars, ends, count);
+        }
+
+        @Override
+        public void reset() throws IOException {
+            super.reset();
+            index = 0;
+            offset = 0;
+        }
+
+        /**
+         * geohash字符及关系字节直接写入复用的词缓冲区，每个索引项不创建对象
+         */
         @Override
         public boolean incrementToken() {
             clearAttributes();
+            if (chars != null) {
+                if (index == count) {
+                    return false;
+                }
+                int end = ends[index++];
+                termAtt.copyBuffer(chars, offset, end - offset);
+                offset = end;
+                return true;
+            }
             if (iter.hasNext()) {
                 Cell cell = iter.next();
-                termAtt.append(cell.getToken() + (char) (cell.getShapeRel()));
+                int length = cell.getCharSize() + 1;
+                char[] buffer = termAtt.resizeBuffer(length);
+                buffer[cell.toChars(buffer, 0)] = (char) cell.getShapeRel();
+                termAtt.setLength(length);
                 return true;
             }
             return false;
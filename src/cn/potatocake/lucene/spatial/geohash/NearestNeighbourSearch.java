@@ -0,0 +1,211 @@
+package cn.potatocake.lucene.spatial.geohash;
+
+import cn.potatocake.lucene.spatial.geohash.filter.AbstractSpatialFilter.Cover;
+import cn.potatocake.lucene.spatial.geohash.filter.CellSpatialFilter;
+import cn.potatocake.lucene.spatial.geohash.utils.DistanceUtils;
+import cn.potatocake.lucene.spatial.geohash.utils.GeoHashUtils;
+import cn.potatocake.lucene.spatial.geohash.utils.GeometryMaker;
+import cn.potatocake.lucene.spatial.geohash.utils.ShapeReader;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.Point;
+import com.vividsolutions.jts.geom.prep.PreparedGeometryFactory;
+import java.io.IOException;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.search.DocIdSet;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.FieldDoc;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.util.FixedBitSet;
+
+/**
+ * 最近邻查找：从查询点所在栅格开始逐圈向外扩展，圈外最近距离超过第k近的距离时停止
+ * <p>
+ * 同一精度扩展MAX_RINGS圈仍不足k个文档时换用更粗的精度，开销只与查询点附近的文档密度有关
+ * <p>
+ * @author Potato-Cake（potato_cake@163.com）
+ */
+final class NearestNeighbourSearch {
+
+    private static final int MAX_RINGS = 4;
+    private final Point point;
+    private final int k;
+    private final int minCharSize;
+    private final List<AtomicReaderContext> leaves;
+    private final FixedBitSet[] seen; // 每个段已计算过距离的文档
+    private final ShapeReader[] shapeReaders;
+    // 按距离降序，队首为当前第k近的文档
+    private final PriorityQueue<FieldDoc> queue;
+    private long[] cells = new long[8];
+
+    /**
+     * @param searcher
+     * @param point
+     * @param k
+     * @param minCharSize 索引中最粗的栅格精度
+     */
+    NearestNeighbourSearch(IndexSearcher searcher, Point point, int k, int minCharSize) {
+        this.point = point;
+        this.k = k;
+        this.minCharSize = minCharSize;
+        this.leaves = searcher.getIndexReader().leaves();
+        this.seen = new FixedBitSet[leaves.size()];
+        this.shapeReaders = new ShapeReader[leaves.size()];
+        this.queue = new PriorityQueue<>(k, new Comparator<FieldDoc>() {
+
+            @Override
+            public int compare(FieldDoc o1, FieldDoc o2) {
+                return Double.compare(distance(o2), distance(o1));
+            }
+        });
+    }
+
+    /**
+     * @param charSize 起始栅格精度
+     *                 <p>
+     * @return 按距离升序排列，FieldDoc.fields[0]为距离（公里）
+     * @throws IOException
+     */
+    TopDocs search(int charSize) throws IOException {
+        double[] bounds = new double[4];
+        while (true) {
+            long center = GeoHashUtils.encode(point.getY(), point.getX(), charSize);
+            GeoHashUtils.decode(center, charSize, bounds);
+            int numBits = GeoHashUtils.BASE32_BITS * charSize;
+            long lonCells = 1L << ((numBits + 1) >>> 1);
+            long latCells = 1L << (numBits >>> 1);
+            for (int r = 0;; r++) {
+                int count = ring(center, charSize, r);
+                collect(Cover.build(cells, count, charSize, minCharSize), getBlock(bounds, r));
+                if (2L * r + 1 >= lonCells && 2L * r + 1 >= latCells) {
+                    return topDocs();
+                }
+                if (queue.size() == k && distance(queue.peek()) <= getMinDistance(bounds, r)) {
+                    return topDocs();
+                }
+                if (queue.size() < k && r + 1 >= MAX_RINGS && charSize > 1) {
+                    charSize--;
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * 第r圈的栅格，第0圈为中心栅格
+     */
+    private int ring(long center, int charSize, int r) {
+        if (r == 0) {
+            cells[0] = center;
+            return 1;
+        }
+        if (cells.length < 8 * r) {
+            cells = new long[8 * r];
+        }
+        int count = 0;
+        for (int dLat = -r; dLat <= r; dLat++) {
+            if (dLat == -r || dLat == r) {
+                for (int dLon = -r; dLon <= r; dLon++) {
+                    cells[count++] = GeoHashUtils.neighbour(center, charSize, dLat, dLon);
+                }
+            } else {
+                cells[count++] = GeoHashUtils.neighbour(center, charSize, dLat, -r);
+                cells[count++] = GeoHashUtils.neighbour(center, charSize, dLat, r);
+            }
+        }
+        return count;
+    }
+
+    private void collect(Cover cover, Geometry block) throws IOException {
+        CellSpatialFilter filter = new CellSpatialFilter(PreparedGeometryFactory.prepare(block), cover);
+        for (int i = 0; i < leaves.size(); i++) {
+            AtomicReaderContext leaf = leaves.get(i);
+            DocIdSet docIdSet = filter.getDocIdSet(leaf, leaf.reader().getLiveDocs());
+            if (docIdSet == null) {
+                continue;
+            }
+            if (seen[i] == null) {
+                seen[i] = new FixedBitSet(leaf.reader().maxDoc());
+                shapeReaders[i] = new ShapeReader(leaf.reader());
+            }
+            DocIdSetIterator iter = docIdSet.iterator();
+            int docid;
+            while ((docid = iter.nextDoc()) != DocIdSetIterator.NO_MORE_DOCS) {
+                if (seen[i].getAndSet(docid)) {
+                    continue;
+                }
+                Geometry shape = shapeReaders[i].read(docid);
+                if (shape == null || shape.isEmpty()) {
+                    continue;
+                }
+                double distance = DistanceUtils.distanceKM(point, shape);
+                if (queue.size() < k) {
+                    queue.add(new FieldDoc(leaf.docBase + docid, Float.NaN, new Object[]{distance}));
+                } else if (distance < distance(queue.peek())) {
+                    queue.poll();
+                    queue.add(new FieldDoc(leaf.docBase + docid, Float.NaN, new Object[]{distance}));
+                }
+            }
+        }
+    }
+
+    /**
+     * 前r圈栅格组成的矩形范围
+     */
+    private Geometry getBlock(double[] bounds, int r) {
+        double width = bounds[1] - bounds[0];
+        double height = bounds[3] - bounds[2];
+        return GeometryMaker.makeRectangle(bounds[0] - r * width, bounds[1] + r * width,
+                Math.max(-90, bounds[2] - r * height), Math.min(90, bounds[3] + r * height));
+    }
+
+    /**
+     * 查询点到前r圈栅格范围以外任意位置的最小距离（公里）
+     */
+    private double getMinDistance(double[] bounds, int r) {
+        double width = bounds[1] - bounds[0];
+        double height = bounds[3] - bounds[2];
+        double minX = bounds[0] - r * width;
+        double maxX = bounds[1] + r * width;
+        double minY = bounds[2] - r * height;
+        double maxY = bounds[3] + r * height;
+        double min = Double.POSITIVE_INFINITY;
+        if (maxY < 90) {
+            min = Math.min(min, (maxY - point.getY()) * DistanceUtils.DEG_TO_KM);
+        }
+        if (minY > -90) {
+            min = Math.min(min, (point.getY() - minY) * DistanceUtils.DEG_TO_KM);
+        }
+        if (maxX - minX < 360) {
+            min = Math.min(min, getMeridianDistance(maxX - point.getX()));
+            min = Math.min(min, getMeridianDistance(point.getX() - minX));
+        }
+        return min;
+    }
+
+    /**
+     * 查询点到经度差为dLon（度）的经线的最小距离（公里）
+     */
+    private double getMeridianDistance(double dLon) {
+        if (dLon >= 90) {
+            return (90 - Math.abs(point.getY())) * DistanceUtils.DEG_TO_KM;
+        }
+        double cosLat = Math.cos(point.getY() * DistanceUtils.DEGREES_TO_RADIANS);
+        return Math.asin(cosLat * Math.sin(dLon * DistanceUtils.DEGREES_TO_RADIANS)) * DistanceUtils.EARTH_MEAN_RADIUS_KM;
+    }
+
+    private TopDocs topDocs() {
+        FieldDoc[] docs = new FieldDoc[queue.size()];
+        for (int i = docs.length - 1; i >= 0; i--) {
+            docs[i] = queue.poll();
+        }
+        return new TopDocs(docs.length, docs, Float.NaN);
+    }
+
+    private static double distance(FieldDoc doc) {
+        return (Double) doc.fields[0];
+    }
+}
@@ -4,42 +4,104 @@ import cn.potatocake.lucene.spatial.SpatialRelation;
 import cn.potatocake.lucene.spatial.geohash.GeohashTreeSpatialStrategy;
 import cn.potatocake.lucene.spatial.geohash.tree.Cell;
 import cn.potatocake.lucene.spatial.geohash.tree.GeometryCell;
+import cn.potatocake.lucene.spatial.geohash.utils.Circle;
+import cn.potatocake.lucene.spatial.geohash.utils.GeoHash;
+import cn.potatocake.lucene.spatial.geohash.utils.GeoHashUtils;
+import cn.potatocake.lucene.spatial.geohash.utils.ShapeReader;
+import com.vividsolutions.jts.algorithm.PointLocator;
+import com.vividsolutions.jts.algorithm.locate.PointOnGeometryLocator;
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Envelope;
 import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.Location;
+import com.vividsolutions.jts.geom.Point;
+import com.vividsolutions.jts.geom.prep.PreparedGeometry;
+import com.vividsolutions.jts.geom.prep.PreparedGeometryFactory;
+import com.vividsolutions.jts.geom.prep.PreparedPolygon;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Map;
-import java.util.WeakHashMap;
+import java.util.Collections;
+import java.util.List;
 import org.apache.lucene.index.AtomicReader;
 import org.apache.lucene.index.AtomicReaderContext;
 import org.apache.lucene.index.DocsEnum;
+import org.apache.lucene.index.NumericDocValues;
 import org.apache.lucene.index.Terms;
 import org.apache.lucene.index.TermsEnum;
 import org.apache.lucene.search.DocIdSet;
 import org.apache.lucene.search.DocIdSetIterator;
 import org.apache.lucene.search.Filter;
+import org.apache.lucene.util.Accountable;
+import org.apache.lucene.util.ArrayUtil;
 import org.apache.lucene.util.Bits;
 import org.apache.lucene.util.BytesRef;
-import org.apache.lucene.util.FixedBitSet;
+import org.apache.lucene.util.InPlaceMergeSorter;
+import org.apache.lucene.util.NumericUtils;
+import org.apache.lucene.util.RamUsageEstimator;
 
 /**
  * 图形过滤器基类
  * <p>
+ * 查询栅格在构造时生成，之后只读；每个段的遍历状态、图形解析器均由Visitor独占，
+ * jts 1.13的PreparedGeometry只对getIntersectionFinder()、getPointLocator()加锁，返回的对象本身非线程安全：
+ * 线段相交查找器将当前的SegmentIntersector保存在成员中，其STRtree在首次查询时才无锁生成，
+ * 因此每个线程使用各自的预处理图形（见benchmark下的ConcurrentSearchCheck），
+ * 同一过滤器可在IndexSearcher(reader, executor)中被多个线程并发用于不同的段
+ * <p>
  * @author @author Potato-Cake（potato_cake@163.com）
  */
 public abstract class AbstractSpatialFilter extends Filter {
 
     protected final Geometry geometry;
+    private final ThreadLocal<PreparedGeometry> preparedGeometry; // 预处理查询图形，同一线程的所有栅格、段及文档共用
     protected final TokenTree tokenTree;
-    private final Map<Integer, Boolean> idChecked = new WeakHashMap<>();
+    protected final List<TokenRange> ranges; // 按字典序排列的栅格区间
+    protected final int minCharSize; // 索引中最粗的栅格精度
+    protected final int maxCharSize; // 查询图形边界栅格精度
+    private final FilterStats stats;
+    private boolean statsEnabled; // 是否累计执行统计，设置了监听器时总是累计
+    private FilterStatsListener listener; // 为空时不计时
 
     public AbstractSpatialFilter(Geometry geometry) {
-        this.geometry = geometry;
-        tokenTree = new TokenTree();
-        GeometryCell geometryCell = GeometryCell.getGeometryCell(geometry);
-        while (geometryCell.hasNext()) {
-            Cell cell = geometryCell.next();
-            tokenTree.setToken(cell.getBytes(), cell.getShapeRel());
-        }
+        this(geometry, GeometryCell.MIN_CHAR_SIZE,
+                geometry instanceof Point ? GeometryCell.POINT_CHAR_SIZE : GeometryCell.MAX_CHAR_SIZE);
+    }
+
+    /**
+     * @param geometry
+     * @param minCharSize 索引中最粗的栅格精度，比查询栅格粗的索引项从该精度开始查找
+     * @param maxCharSize 查询图形边界栅格精度
+     */
+    public AbstractSpatialFilter(Geometry geometry, int minCharSize, int maxCharSize) {
+        this(geometry, PreparedGeometryFactory.prepare(geometry), minCharSize, maxCharSize);
+    }
+
+    private AbstractSpatialFilter(Geometry geometry, PreparedGeometry prepared, int minCharSize, int maxCharSize) {
+        this(prepared, Cover.build(prepared, minCharSize, maxCharSize));
+    }
+
+    /**
+     * 使用已生成的查询栅格，多个过滤器可共用同一Cover；prepared只在当前线程使用，其他线程各自重新预处理
+     * <p>
+     * @param prepared
+     * @param cover    由同一图形生成的查询栅格
+     */
+    public AbstractSpatialFilter(PreparedGeometry prepared, Cover cover) {
+        this.geometry = prepared.getGeometry();
+        this.preparedGeometry = new ThreadLocal<PreparedGeometry>() {
+
+            @Override
+            protected PreparedGeometry initialValue() {
+                return PreparedGeometryFactory.prepare(AbstractSpatialFilter.this.geometry);
+            }
+        };
+        this.preparedGeometry.set(prepared);
+        this.tokenTree = cover.getTokenTree();
+        this.ranges = cover.getRanges();
+        this.minCharSize = cover.getMinCharSize();
+        this.maxCharSize = cover.getMaxCharSize();
+        this.stats = new FilterStats(cover.getTokenTree().size(), cover.getBuildNanos());
     }
 
     @Override
@@ -49,6 +111,121 @@ public abstract class AbstractSpatialFilter extends Filter {
 
     public abstract Visitor getVisitor(AtomicReaderContext context, Bits acceptDocs, Geometry geometry) throws IOException;
 
+    /**
+     * 过滤器创建以来在所有段上的执行统计，未开启统计且未设置监听器时各项均为0
+     */
+    public FilterStats getStats() {
+        return stats;
+    }
+
+    public boolean isStatsEnabled() {
+        return statsEnabled;
+    }
+
+    /**
+     * 开启后每个段遍历结束时将计数累计到getStats()，需在过滤器执行前设置；设置了监听器时总是累计
+     * <p>
+     * @param statsEnabled
+     */
+    public void setStatsEnabled(boolean statsEnabled) {
+        this.statsEnabled = statsEnabled;
+    }
+
+    public FilterStatsListener getListener() {
+        return listener;
+    }
+
+    /**
+     * 设置执行监听器，每个段遍历结束后调用，需在过滤器执行前设置
+     * <p>
+     * @param listener 为null时不计时
+     */
+    public void setListener(FilterStatsListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * 两阶段遍历：先遍历索引项得到确定命中的文档及候选文档，候选文档在迭代到时才校验图形，
+     * 与其他查询条件求交集时，被其他条件排除的候选文档不再校验；
+     * 迭代中校验的文档数在迭代结束时才计入统计，未迭代到末尾时不计入
+     * <p>
+     * @param context
+     * @param acceptDocs
+     *                   <p>
+     * @return 段中没有可能命中的文档时返回null
+     * @throws IOException
+     */
+    public DocIdSetIterator getLazyIterator(AtomicReaderContext context, Bits acceptDocs) throws IOException {
+        final Visitor visitor = getVisitor(context, acceptDocs, geometry);
+        if (!visitor.collectCandidates()) {
+            return null;
+        }
+        final DocSet matched = visitor.getMatched();
+        final DocSet candidates = visitor.getCandidates();
+        final long cost = matched.cardinality() + candidates.cardinality();
+        return new DocIdSetIterator() {
+
+            private int doc = -1;
+
+            @Override
+            public int docID() {
+                return doc;
+            }
+
+            @Override
+            public int nextDoc() throws IOException {
+                return advance(doc + 1);
+            }
+
+            @Override
+            public int advance(int target) throws IOException {
+                while (target < visitor.maxDoc) {
+                    int next = matched.nextSetBit(target);
+                    int candidate = candidates.nextSetBit(target);
+                    if (candidate < 0 || (next >= 0 && next < candidate)) {
+                        break;
+                    }
+                    if (visitor.verify(candidate)) {
+                        return doc = candidate;
+                    }
+                    target = candidate + 1;
+                }
+                int next = target < visitor.maxDoc ? matched.nextSetBit(target) : -1;
+                if (next < 0) {
+                    visitor.reportVerified();
+                    return doc = NO_MORE_DOCS;
+                }
+                return doc = next;
+            }
+
+            @Override
+            public long cost() {
+                return cost;
+            }
+        };
+    }
+
+    /**
+     * 单个文档是否满足条件，用于Explanation：遍历索引项后只校验该文档，不迭代段中其他候选文档
+     * <p>
+     * @param context
+     * @param acceptDocs
+     * @param doc        段内文档号
+     *                   <p>
+     * @return
+     * @throws IOException
+     */
+    boolean matches(AtomicReaderContext context, Bits acceptDocs, int doc) throws IOException {
+        if (acceptDocs != null && !acceptDocs.get(doc)) {
+            return false;
+        }
+        Visitor visitor = getVisitor(context, acceptDocs, geometry);
+        if (!visitor.collectCandidates()) {
+            return false;
+        }
+        return visitor.getMatched().get(doc) || (visitor.getCandidates().get(doc) && visitor.verify(doc));
+    }
+
     protected abstract SpatialRelation getSpatialRelation();
 
     @Override
@@ -75,20 +252,64 @@ public abstract class AbstractSpatialFilter extends Filter {
         return result;
     }
 
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "(" + getSpatialRelation() + ", " + geometry + ")";
+    }
+
     abstract class Visitor {
 
         protected final AtomicReaderContext context;
         protected final Geometry geometry;
         protected final int maxDoc;
+        protected final PreparedGeometry prepared; // 当前线程的预处理查询图形
+        protected final Envelope queryEnvelope;
         protected Bits acceptDocs;
         protected TermsEnum termsEnum;
         protected DocsEnum docsEnum;
-        private BytesRef thisTerm;
-        protected FixedBitSet bitSet;
+        protected DocSet bitSet; // 命中的文档
+        protected DocSet checked; // 已校验过图形的文档，每个段、每次查询独立
+        protected DocSet candidates; // 两阶段遍历时待校验的文档，为null时直接校验
+        protected DocSet pointCandidates; // 候选文档中的数值点
+        protected byte termRelation; // 当前索引项原始的关系字节，未按查询栅格精度降级
+        protected TermsEnum pointTermsEnum; // 数值点索引
+        private final ShapeReader shapeReader;
+        private NumericDocValues xValues;
+        private NumericDocValues yValues;
+        private NumericDocValues minXValues; // 文档外包矩形
+        private NumericDocValues maxXValues;
+        private NumericDocValues minYValues;
+        private NumericDocValues maxYValues;
+        private Bits envelopeDocs;
+        private final Envelope docEnvelope = new Envelope();
+        private final boolean recorded; // 开启统计或设置了监听器时才汇总计数
+        private final boolean timed; // 设置了监听器时才计时
+        private long startNanos;
+        private long termsEnumerated;
+        private long termsMatched;
+        private long docsCollected;
+        private long docsChecked;
+        private long verifyNanos;
+        private long envelopeChecks;
+        private long envelopeRejects;
+        private long docsVerified; // 两阶段遍历中迭代时校验的文档，迭代结束时汇总
+        private long verifiedNanos;
+        private Envelope rectangle; // 查询图形为矩形时直接比较坐标
+        private PointOnGeometryLocator pointLocator;
+        private PointLocator locator;
+        private final Coordinate coordinate = new Coordinate();
+        private long[] pointRanges = new long[16]; // 数值点区间按精度拆分后的{min, max, shift}
+        private int pointRangeCount;
+        private final BytesRef pointLower = new BytesRef(NumericUtils.BUF_SIZE_LONG);
+        private final BytesRef pointUpper = new BytesRef(NumericUtils.BUF_SIZE_LONG);
 
         public Visitor(AtomicReaderContext context, Bits acceptDocs, Geometry geometry) throws IOException {
             this.context = context;
             this.geometry = geometry;
+            this.prepared = preparedGeometry.get();
+            this.queryEnvelope = geometry.getEnvelopeInternal();
+            this.timed = listener != null;
+            this.recorded = timed || statsEnabled;
             AtomicReader reader = context.reader();
             this.acceptDocs = acceptDocs;
             this.maxDoc = reader.maxDoc();
@@ -96,26 +317,298 @@ public abstract class AbstractSpatialFilter extends Filter {
             if (terms != null) {
                 this.termsEnum = terms.iterator(null);
             }
+            this.shapeReader = new ShapeReader(reader);
+            this.minXValues = reader.getNumericDocValues(GeohashTreeSpatialStrategy.MIN_X_FIELD_NAME);
+            if (minXValues != null) {
+                this.maxXValues = reader.getNumericDocValues(GeohashTreeSpatialStrategy.MAX_X_FIELD_NAME);
+                this.minYValues = reader.getNumericDocValues(GeohashTreeSpatialStrategy.MIN_Y_FIELD_NAME);
+                this.maxYValues = reader.getNumericDocValues(GeohashTreeSpatialStrategy.MAX_Y_FIELD_NAME);
+                this.envelopeDocs = reader.getDocsWithField(GeohashTreeSpatialStrategy.MIN_X_FIELD_NAME);
+            }
+            Terms pointTerms = reader.terms(GeohashTreeSpatialStrategy.POINT_FIELD_NAME);
+            if (pointTerms != null) {
+                this.pointTermsEnum = pointTerms.iterator(null);
+                this.xValues = reader.getNumericDocValues(GeohashTreeSpatialStrategy.CENTER_X_FIELD_NAME);
+                this.yValues = reader.getNumericDocValues(GeohashTreeSpatialStrategy.CENTER_Y_FIELD_NAME);
+            }
         }
 
         public DocIdSet getDocIdSet() throws IOException {
-            if (termsEnum == null) {
+            if ((termsEnum == null && pointTermsEnum == null) || ranges.isEmpty()) {
                 return null;
             }
-            if ((thisTerm = termsEnum.next()) == null) {
-                return null;
+            startNanos = timed ? System.nanoTime() : 0;
+            bitSet = new DocSet(maxDoc);
+            checked = new DocSet(maxDoc);
+            start();
+            visitRanges(getRanges());
+            visitPoints(getRanges());
+            finish();
+            report(0);
+            return bitSet.toDocIdSet();
+        }
+
+        /**
+         * 两阶段遍历的第一阶段：只遍历索引项，确定命中的文档记入getMatched()，需要校验图形的记入getCandidates()
+         * <p>
+         * @return 段中没有可能命中的文档时返回false
+         * @throws IOException
+         */
+        public boolean collectCandidates() throws IOException {
+            if ((termsEnum == null && pointTermsEnum == null) || ranges.isEmpty()) {
+                return false;
+            }
+            startNanos = timed ? System.nanoTime() : 0;
+            bitSet = new DocSet(maxDoc);
+            checked = new DocSet(maxDoc);
+            candidates = new DocSet(maxDoc);
+            if (pointTermsEnum != null) {
+                pointCandidates = new DocSet(maxDoc);
             }
-            bitSet = new FixedBitSet(maxDoc);
             start();
-            while (thisTerm != null) {
-                byte relation = tokenTree.checkToken(thisTerm.bytes);
-                visit(thisTerm.bytes[thisTerm.length - 1], relation);
-                if ((thisTerm = termsEnum.next()) == null) {
+            visitRanges(getRanges());
+            visitPoints(getRanges());
+            finish();
+            // 先作为候选、之后又被确定命中的文档无需再校验
+            candidates.andNot(bitSet);
+            report(candidates.cardinality());
+            return true;
+        }
+
+        /**
+         * 汇总本段的统计并通知监听器，未开启统计时直接返回
+         */
+        private void report(long docsDeferred) {
+            if (!recorded) {
+                return;
+            }
+            SegmentStats segmentStats = new SegmentStats(maxDoc, termsEnumerated, termsMatched, docsCollected, docsChecked,
+                    docsDeferred, envelopeChecks, envelopeRejects, verifyNanos, timed ? System.nanoTime() - startNanos : 0);
+            stats.add(segmentStats);
+            FilterStatsListener l = listener;
+            if (l != null) {
+                l.onSegment(AbstractSpatialFilter.this, context, segmentStats);
+            }
+        }
+
+        public DocSet getMatched() {
+            return bitSet;
+        }
+
+        public DocSet getCandidates() {
+            return candidates;
+        }
+
+        /**
+         * 两阶段遍历的第二阶段：校验候选文档
+         * <p>
+         * @param docid
+         *              <p>
+         * @return
+         * @throws IOException
+         */
+        public boolean verify(int docid) throws IOException {
+            long start = timed ? System.nanoTime() : 0;
+            boolean result;
+            if (pointCandidates != null && pointCandidates.get(docid)) {
+                result = isNeed(Double.longBitsToDouble(xValues.get(docid)), Double.longBitsToDouble(yValues.get(docid)));
+            } else {
+                result = isNeed(docid);
+            }
+            docsVerified++;
+            if (timed) {
+                verifiedNanos += System.nanoTime() - start;
+            }
+            return result;
+        }
+
+        /**
+         * 汇总第二阶段校验的文档数及耗时
+         */
+        void reportVerified() {
+            if (recorded && docsVerified > 0) {
+                stats.addVerified(docsVerified, verifiedNanos);
+            }
+            docsVerified = 0;
+            verifiedNanos = 0;
+        }
+
+        /**
+         * 需要遍历的查询栅格区间，默认为全部
+         */
+        protected List<TokenRange> getRanges() {
+            return ranges;
+        }
+
+        /**
+         * 按查询栅格顺序跳转，只遍历落在栅格区间内的索引项
+         * <p>
+         * @param ranges
+         *               <p>
+         * @throws IOException
+         */
+        protected void visitRanges(List<TokenRange> ranges) throws IOException {
+            if (termsEnum == null) {
+                return;
+            }
+            for (TokenRange range : ranges) {
+                if (range.isPrefix()) {
+                    // 比查询栅格粗的索引项，查询图形与其只可能部分相交
+                    for (BytesRef t : range.getPrefixTerms()) {
+                        if (termsEnum.seekExact(t)) {
+                            termsEnumerated++;
+                            termRelation = t.bytes[t.length - 1];
+                            if (visit(termRelation, SpatialRelation.INTERSECTS.getByte())) {
+                                termsMatched++;
+                            }
+                        }
+                    }
+                    continue;
+                }
+                if (termsEnum.seekCeil(range.getLower()) == TermsEnum.SeekStatus.END) {
+                    break;
+                }
+                BytesRef term = termsEnum.term();
+                while (term != null && term.compareTo(range.getUpper()) < 0) {
+                    // 关系字节也是合法的base32字符，长度不足的是更粗的栅格，已由前缀查找处理
+                    if (term.length > range.getTokenLength()) {
+                        termsEnumerated++;
+                        byte cellRelation = term.bytes[term.offset + term.length - 1];
+                        termRelation = cellRelation;
+                        // 索引栅格比查询栅格细时，图形包含索引栅格只能说明与查询栅格相交
+                        if (term.length > range.getTokenLength() + 1 && cellRelation == SpatialRelation.CONTAINS.getByte()) {
+                            cellRelation = SpatialRelation.INTERSECTS.getByte();
+                        }
+                        if (visit(cellRelation, range.getRel())) {
+                            termsMatched++;
+                        }
+                    }
+                    term = termsEnum.next();
+                }
+                if (term == null) {
                     break;
                 }
             }
-            finish();
-            return bitSet;
+        }
+
+        /**
+         * 遍历落在栅格区间内的数值点，每个栅格区间按数值精度拆分为若干索引项区间
+         * <p>
+         * @param ranges
+         *               <p>
+         * @throws IOException
+         */
+        protected void visitPoints(List<TokenRange> ranges) throws IOException {
+            if (pointTermsEnum == null || xValues == null || yValues == null) {
+                return;
+            }
+            for (TokenRange range : ranges) {
+                if (range.isPrefix()) {
+                    continue;
+                }
+                int shift = GeoHashUtils.BASE32_BITS * (GeoHashUtils.MAX_CHAR_SIZE - range.getTokenLength());
+                long min = GeoHashUtils.ord(range.getLowerBits(), GeoHashUtils.MAX_CHAR_SIZE);
+                long max = GeoHashUtils.ord(range.getLastBits(), GeoHashUtils.MAX_CHAR_SIZE) | ((1L << shift) - 1);
+                pointRangeCount = 0;
+                NumericUtils.splitLongRange(new NumericUtils.LongRangeBuilder() {
+
+                    @Override
+                    public void addRange(long min, long max, int shift) {
+                        if (pointRanges.length < pointRangeCount + 3) {
+                            pointRanges = Arrays.copyOf(pointRanges, pointRanges.length * 2);
+                        }
+                        pointRanges[pointRangeCount++] = min;
+                        pointRanges[pointRangeCount++] = max;
+                        pointRanges[pointRangeCount++] = shift;
+                    }
+                }, GeohashTreeSpatialStrategy.POINT_PRECISION_STEP, min, max);
+                for (int i = 0; i < pointRangeCount; i += 3) {
+                    NumericUtils.longToPrefixCodedBytes(pointRanges[i], (int) pointRanges[i + 2], pointLower);
+                    NumericUtils.longToPrefixCodedBytes(pointRanges[i + 1], (int) pointRanges[i + 2], pointUpper);
+                    // 不同精度的索引项按精度分段排列，某一精度查找越界时其他精度仍需查找
+                    if (pointTermsEnum.seekCeil(pointLower) == TermsEnum.SeekStatus.END) {
+                        continue;
+                    }
+                    BytesRef term = pointTermsEnum.term();
+                    while (term != null && term.compareTo(pointUpper) <= 0) {
+                        termsEnumerated++;
+                        if (visitPoint(range.getRel())) {
+                            termsMatched++;
+                        }
+                        term = pointTermsEnum.next();
+                    }
+                }
+            }
+        }
+
+        protected void collectPointDocs() throws IOException {
+            docsEnum = pointTermsEnum.docs(acceptDocs, docsEnum, DocsEnum.FLAG_NONE);
+            int docid;
+            while ((docid = docsEnum.nextDoc()) != DocIdSetIterator.NO_MORE_DOCS) {
+                bitSet.set(docid);
+                docsCollected++;
+            }
+        }
+
+        /**
+         * 按DocValues中的经纬度校验数值点，不解析图形
+         * <p>
+         * @throws IOException
+         */
+        protected void checkPointDocs() throws IOException {
+            docsEnum = pointTermsEnum.docs(acceptDocs, docsEnum, DocsEnum.FLAG_NONE);
+            int docid;
+            while ((docid = docsEnum.nextDoc()) != DocIdSetIterator.NO_MORE_DOCS) {
+                if (bitSet.get(docid) || checked.getAndSet(docid)) {
+                    continue;
+                }
+                if (candidates != null) {
+                    candidates.set(docid);
+                    pointCandidates.set(docid);
+                    continue;
+                }
+                double x = Double.longBitsToDouble(xValues.get(docid));
+                double y = Double.longBitsToDouble(yValues.get(docid));
+                docsChecked++;
+                if (isNeed(x, y)) {
+                    bitSet.set(docid);
+                }
+            }
+        }
+
+        /**
+         * 点与查询图形的位置关系
+         * <p>
+         * @param x
+         * @param y
+         *          <p>
+         * @return Location.INTERIOR、Location.BOUNDARY或Location.EXTERIOR
+         */
+        protected int locate(double x, double y) {
+            if (rectangle == null && pointLocator == null && locator == null) {
+                if (geometry.isRectangle()) {
+                    rectangle = geometry.getEnvelopeInternal();
+                } else if (prepared instanceof PreparedPolygon) {
+                    pointLocator = ((PreparedPolygon) prepared).getPointLocator();
+                } else {
+                    locator = new PointLocator();
+                }
+            }
+            if (rectangle != null) {
+                if (x < rectangle.getMinX() || x > rectangle.getMaxX() || y < rectangle.getMinY() || y > rectangle.getMaxY()) {
+                    return Location.EXTERIOR;
+                }
+                if (x == rectangle.getMinX() || x == rectangle.getMaxX() || y == rectangle.getMinY() || y == rectangle.getMaxY()) {
+                    return Location.BOUNDARY;
+                }
+                return Location.INTERIOR;
+            }
+            coordinate.x = x;
+            coordinate.y = y;
+            if (pointLocator != null) {
+                return pointLocator.locate(coordinate);
+            }
+            return locator.locate(coordinate, geometry);
         }
 
         protected void collectDocs() throws IOException {
@@ -123,6 +616,7 @@ public abstract class AbstractSpatialFilter extends Filter {
             int docid;
             while ((docid = docsEnum.nextDoc()) != DocIdSetIterator.NO_MORE_DOCS) {
                 bitSet.set(docid);
+                docsCollected++;
             }
         }
 
@@ -130,19 +624,97 @@ public abstract class AbstractSpatialFilter extends Filter {
             docsEnum = termsEnum.docs(acceptDocs, docsEnum, DocsEnum.FLAG_NONE);
             int docid;
             while ((docid = docsEnum.nextDoc()) != DocIdSetIterator.NO_MORE_DOCS) {
-                if (idChecked.containsKey(docid)) {
+                if (bitSet.get(docid) || checked.getAndSet(docid) || !checkEnvelope(docid)) {
                     continue;
                 }
-                boolean r = isNeed(docid);
-                idChecked.put(docid, r);
-                if (r) {
+                if (candidates != null) {
+                    candidates.set(docid);
+                    continue;
+                }
+                docsChecked++;
+                long start = timed ? System.nanoTime() : 0;
+                if (isNeed(docid)) {
                     bitSet.set(docid);
                 }
+                if (timed) {
+                    verifyNanos += System.nanoTime() - start;
+                }
+            }
+        }
+
+        /**
+         * 先比较文档外包矩形，段中没有外包矩形时视为满足
+         */
+        private boolean checkEnvelope(int docid) {
+            if (minXValues == null || !envelopeDocs.get(docid)) {
+                return true;
+            }
+            docEnvelope.init(Double.longBitsToDouble(minXValues.get(docid)), Double.longBitsToDouble(maxXValues.get(docid)),
+                    Double.longBitsToDouble(minYValues.get(docid)), Double.longBitsToDouble(maxYValues.get(docid)));
+            envelopeChecks++;
+            if (isNeed(docEnvelope)) {
+                return true;
             }
+            envelopeRejects++;
+            return false;
+        }
+
+        /**
+         * 当前索引项的文档已确定不满足条件，标记为已校验，之后不再校验
+         * <p>
+         * @throws IOException
+         */
+        protected void rejectDocs() throws IOException {
+            docsEnum = termsEnum.docs(acceptDocs, docsEnum, DocsEnum.FLAG_NONE);
+            int docid;
+            while ((docid = docsEnum.nextDoc()) != DocIdSetIterator.NO_MORE_DOCS) {
+                checked.set(docid);
+            }
+        }
+
+        /**
+         * 读取文档图形，优先使用BinaryDocValues中的WKB数据，不存在时读取WKT字段
+         * <p>
+         * @param docid
+         *              <p>
+         * @return
+         * @throws IOException
+         */
+        protected Geometry getGeometry(int docid) throws IOException {
+            return shapeReader.read(docid);
         }
 
         protected abstract boolean isNeed(int docid) throws IOException;
 
+        /**
+         * 按外包矩形预判文档，返回false时不再读取图形
+         * <p>
+         * @param envelope 文档外包矩形
+         *                 <p>
+         * @return
+         */
+        protected abstract boolean isNeed(Envelope envelope);
+
+        /**
+         * 校验数值点
+         * <p>
+         * @param x 经度
+         * @param y 纬度
+         *          <p>
+         * @return
+         */
+        protected abstract boolean isNeed(double x, double y);
+
+        /**
+         * 访问落在查询栅格中的数值点索引项
+         * <p>
+         * @param relation 查询图形与栅格的关系
+         *                 <p>
+         * @return
+         * @throws IOException
+         */
+        protected abstract boolean visitPoint(byte relation) throws IOException;
+
         protected abstract void start() throws IOException;
 
         protected abstract void finish() throws IOException;
@@ -150,70 +722,469 @@ public abstract class AbstractSpatialFilter extends Filter {
         protected abstract boolean visit(byte cellRelation, byte relation) throws IOException;
     }
 
-    public static class TokenTree {
+    /**
+     * 查询栅格，生成后只读，可在多个过滤器、线程间共用
+     */
+    public static final class Cover implements Accountable {
+
+        private static final long BASE_RAM_BYTES_USED = RamUsageEstimator.shallowSizeOfInstance(Cover.class);
+        private final TokenTree tokenTree;
+        private final List<TokenRange> ranges;
+        private final int minCharSize;
+        private final int maxCharSize;
+        private final long ramBytesUsed;
+        private final long buildNanos;
+
+        private Cover(TokenTree tokenTree, int minCharSize, int maxCharSize, long startNanos) {
+            this.tokenTree = tokenTree;
+            this.minCharSize = minCharSize;
+            this.maxCharSize = maxCharSize;
+            List<TokenRange> list = tokenTree.getRanges(minCharSize);
+            long bytes = BASE_RAM_BYTES_USED + tokenTree.ramBytesUsed()
+                    + RamUsageEstimator.alignObjectSize(RamUsageEstimator.NUM_BYTES_ARRAY_HEADER
+                            + (long) RamUsageEstimator.NUM_BYTES_OBJECT_REF * list.size());
+            for (TokenRange range : list) {
+                bytes += range.ramBytesUsed();
+            }
+            this.ranges = Collections.unmodifiableList(list);
+            this.ramBytesUsed = bytes;
+            this.buildNanos = System.nanoTime() - startNanos;
+        }
+
+        /**
+         * 由指定的同精度栅格生成查询栅格，各栅格与查询的关系均为相交
+         * <p>
+         * @param cells       栅格hash值
+         * @param count       栅格数
+         * @param charSize    栅格精度
+         * @param minCharSize 索引中最粗的栅格精度
+         *                    <p>
+         * @return
+         */
+        public static Cover build(long[] cells, int count, int charSize, int minCharSize) {
+            long start = System.nanoTime();
+            TokenTree.Builder builder = new TokenTree.Builder();
+            for (int i = 0; i < count; i++) {
+                builder.add(cells[i], charSize, SpatialRelation.INTERSECTS.getByte());
+            }
+            return new Cover(builder.build(), minCharSize, charSize, start);
+        }
+
+        /**
+         * 生成图形的查询栅格
+         * <p>
+         * @param prepared
+         * @param minCharSize 索引中最粗的栅格精度
+         * @param maxCharSize 查询图形边界栅格精度
+         *                    <p>
+         * @return
+         */
+        public static Cover build(PreparedGeometry prepared, int minCharSize, int maxCharSize) {
+            return build(prepared, minCharSize, maxCharSize, 0);
+        }
 
-        private static final byte MIN_NUM_BYTE = '0';
-        private static final byte MIN_CHAR_BYTE = 'b' - 10;
-        private final TokenTree[] tree = new TokenTree[36];
-        private byte rel = Byte.MIN_VALUE;
+        /**
+         * 生成图形的查询栅格，栅格数超过maxCells时逐级降低边界栅格精度重新生成，
+         * 粗栅格多出的候选文档由校验图形排除；每次生成超出上限即停止，生成耗时随上限有界
+         * <p>
+         * @param prepared
+         * @param minCharSize 索引中最粗的栅格精度
+         * @param maxCharSize 查询图形边界栅格精度
+         * @param maxCells    栅格数上限，不大于0时不限制；精度降到1位仍超出时使用1位栅格
+         *                    <p>
+         * @return 实际使用的边界栅格精度见getMaxCharSize()
+         */
+        public static Cover build(PreparedGeometry prepared, int minCharSize, int maxCharSize, int maxCells) {
+            return build(prepared, null, minCharSize, maxCharSize, maxCells);
+        }
+
+        /**
+         * 生成圆形的查询栅格，栅格关系按球面距离判断
+         * <p>
+         * @param circle
+         * @param minCharSize 索引中最粗的栅格精度
+         * @param maxCharSize 圆边界栅格精度
+         * @param maxCells    栅格数上限，不大于0时不限制
+         *                    <p>
+         * @return
+         */
+        public static Cover build(Circle circle, int minCharSize, int maxCharSize, int maxCells) {
+            return build(null, circle, minCharSize, maxCharSize, maxCells);
+        }
 
-        public void setToken(byte[] token, byte rel) {
-            TokenTree[] ttree = tree;
-            for (int i = 0; i < token.length; i++) {
-                int pos = pos(token[i]);
-                TokenTree t = ttree[pos];
-                if (t == null) {
-                    t = new TokenTree();
-                    ttree[pos] = t;
+        private static Cover build(PreparedGeometry prepared, Circle circle, int minCharSize, int maxCharSize,
+                int maxCells) {
+            long start = System.nanoTime();
+            for (int charSize = maxCharSize;; charSize--) {
+                TokenTree.Builder builder = new TokenTree.Builder();
+                GeometryCell geometryCell = circle != null ? GeometryCell.getGeometryCell(circle, minCharSize, charSize)
+                        : GeometryCell.getGeometryCell(prepared, minCharSize, charSize);
+                int count = 0;
+                boolean exceeded = false;
+                while (geometryCell.hasNext()) {
+                    Cell cell = geometryCell.next();
+                    builder.add(cell.longValue(), cell.getCharSize(), cell.getShapeRel());
+                    if (maxCells > 0 && ++count > maxCells && charSize > 1) {
+                        exceeded = true;
+                        break;
+                    }
                 }
-                if (i == (token.length - 1)) {
-                    t.rel = rel;
+                if (!exceeded) {
+                    return new Cover(builder.build(), minCharSize, charSize, start);
+                }
+            }
+        }
+
+        public TokenTree getTokenTree() {
+            return tokenTree;
+        }
+
+        public List<TokenRange> getRanges() {
+            return ranges;
+        }
+
+        public int getMinCharSize() {
+            return minCharSize;
+        }
+
+        public int getMaxCharSize() {
+            return maxCharSize;
+        }
+
+        /**
+         * 生成耗时（纳秒）
+         */
+        public long getBuildNanos() {
+            return buildNanos;
+        }
+
+        @Override
+        public long ramBytesUsed() {
+            return ramBytesUsed;
+        }
+    }
+
+    /**
+     * 查询栅格集合，按字典序排列的栅格数组，生成后只读
+     * <p>
+     * 栅格之间互不包含，索引项所在的查询栅格只可能是字典序不大于它的最后一个栅格，一次二分查找即可确定
+     */
+    public static final class TokenTree implements Accountable {
+
+        private static final long BASE_RAM_BYTES_USED = RamUsageEstimator.shallowSizeOfInstance(TokenTree.class);
+        private static final int CHAR_SIZE_MASK = 0xF;
+        // 栅格hash值左对齐，低4位存字符数；最高位取反后按有符号数比较即为geohash字典序
+        private final long[] keys;
+        private final byte[] rels;
+
+        private TokenTree(long[] keys, byte[] rels) {
+            this.keys = keys;
+            this.rels = rels;
+        }
+
+        private static long key(long bits, int charSize) {
+            return (bits | charSize) ^ Long.MIN_VALUE;
+        }
+
+        private static long bits(long key) {
+            return (key ^ Long.MIN_VALUE) & ~CHAR_SIZE_MASK;
+        }
+
+        private static int charSize(long key) {
+            return (int) key & CHAR_SIZE_MASK;
+        }
+
+        private static long mask(int charSize) {
+            return 0xffffffffffffffffL << (64 - GeoHashUtils.BASE32_BITS * charSize);
+        }
+
+        public int size() {
+            return keys.length;
+        }
+
+        /**
+         * 获取栅格所在查询栅格与查询图形的关系，不在任何查询栅格内（包括比查询栅格粗）时返回DISJOINT
+         * <p>
+         * @param bits
+         * @param charSize
+         *                 <p>
+         * @return
+         */
+        public byte getRelation(long bits, int charSize) {
+            int index = Arrays.binarySearch(keys, key(bits, charSize));
+            if (index >= 0) {
+                return rels[index];
+            }
+            index = -index - 2;
+            if (index >= 0) {
+                int size = charSize(keys[index]);
+                if (size <= charSize && bits(keys[index]) == (bits & mask(size))) {
+                    return rels[index];
                 }
-                ttree = t.tree;
             }
+            return SpatialRelation.DISJOINT.getByte();
         }
 
+        /**
+         * @param token geohash字符，超过12位的部分忽略
+         *              <p>
+         * @return
+         */
         public byte checkToken(byte[] token) {
-            byte result = SpatialRelation.DISJOINT.getByte();
-            TokenTree[] ttree = tree;
-            for (byte b : token) {
-                TokenTree t = ttree[pos(b)];
-                if (t != null) {
-                    if (t.rel != Byte.MIN_VALUE) {
-                        result = t.rel;
-                        break;
-                    }
+            int length = Math.min(token.length, GeoHashUtils.MAX_CHAR_SIZE);
+            return getRelation(GeoHashUtils.fromBase32(token, 0, length), length);
+        }
+
+        /**
+         * 按字典序获取所有栅格，相邻且关系相同、精度相同的栅格合并为一个区间；
+         * 长度不小于minPrefixLength的栅格前缀也作为区间返回，排在其第一个子栅格之前，用于查找比查询栅格粗的索引项
+         * <p>
+         * @param minPrefixLength
+         *                        <p>
+         * @return
+         */
+        public List<TokenRange> getRanges(int minPrefixLength) {
+            List<TokenRange> ranges = new ArrayList<>();
+            byte[] prev = new byte[0];
+            for (int i = 0; i < keys.length; i++) {
+                byte[] token = new byte[charSize(keys[i])];
+                GeoHashUtils.toBase32(bits(keys[i]), token.length, token, 0);
+                int common = 0;
+                while (common < prev.length && common < token.length && prev[common] == token[common]) {
+                    common++;
+                }
+                // 与上一个栅格不同的祖先栅格即尚未输出的前缀
+                for (int length = Math.max(common + 1, minPrefixLength); length < token.length; length++) {
+                    ranges.add(new TokenRange(Arrays.copyOf(token, length)));
+                }
+                TokenRange last = ranges.isEmpty() ? null : ranges.get(ranges.size() - 1);
+                if (last != null && last.rel == rels[i] && last.isAdjacent(token)) {
+                    last.extend(token);
                 } else {
-                    break;
+                    ranges.add(new TokenRange(token, rels[i]));
                 }
-                ttree = t.tree;
+                prev = token;
             }
-            return result;
+            return ranges;
         }
 
-        private int pos(byte b) {
-            if (b > MIN_CHAR_BYTE) {
-                return b - MIN_CHAR_BYTE;
-            } else {
-                return b - MIN_NUM_BYTE;
+        @Override
+        public long ramBytesUsed() {
+            return BASE_RAM_BYTES_USED + RamUsageEstimator.sizeOf(keys) + RamUsageEstimator.sizeOf(rels);
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder("[");
+            for (int i = 0; i < keys.length; i++) {
+                if (i > 0) {
+                    sb.append(", ");
+                }
+                sb.append(GeoHashUtils.toBase32(bits(keys[i]), charSize(keys[i]))).append('=').append((char) rels[i]);
+            }
+            return sb.append(']').toString();
+        }
+
+        /**
+         * 逐个添加栅格，栅格按字典序添加时无需排序；同一栅格重复添加时以最后一次为准
+         */
+        public static final class Builder {
+
+            private long[] keys = new long[16];
+            private byte[] rels = new byte[16];
+            private int size;
+            private boolean sorted = true;
+
+            public Builder add(long bits, int charSize, byte rel) {
+                if (charSize < 1 || charSize > GeoHashUtils.MAX_CHAR_SIZE) {
+                    throw new IllegalArgumentException("char size must be between 1 and " + GeoHashUtils.MAX_CHAR_SIZE);
+                }
+                long key = key(bits & mask(charSize), charSize);
+                if (size > 0 && key <= keys[size - 1]) {
+                    sorted = false;
+                }
+                if (size == keys.length) {
+                    keys = ArrayUtil.grow(keys, size + 1);
+                }
+                if (size == rels.length) {
+                    rels = ArrayUtil.grow(rels, size + 1);
+                }
+                keys[size] = key;
+                rels[size] = rel;
+                size++;
+                return this;
+            }
+
+            public Builder add(byte[] token, int length, byte rel) {
+                return add(GeoHashUtils.fromBase32(token, 0, length), length, rel);
+            }
+
+            public TokenTree build() {
+                int count = size;
+                if (!sorted) {
+                    // 稳定排序，重复栅格保留最后添加的关系
+                    new InPlaceMergeSorter() {
+
+                        @Override
+                        protected int compare(int i, int j) {
+                            return Long.compare(keys[i], keys[j]);
+                        }
+
+                        @Override
+                        protected void swap(int i, int j) {
+                            long key = keys[i];
+                            keys[i] = keys[j];
+                            keys[j] = key;
+                            byte rel = rels[i];
+                            rels[i] = rels[j];
+                            rels[j] = rel;
+                        }
+                    }.sort(0, size);
+                    count = 0;
+                    for (int i = 0; i < size; i++) {
+                        if (count > 0 && keys[count - 1] == keys[i]) {
+                            count--;
+                        }
+                        keys[count] = keys[i];
+                        rels[count] = rels[i];
+                        count++;
+                    }
+                }
+                for (int i = 1; i < count; i++) {
+                    // 子栅格紧跟在父栅格之后，只需检查相邻栅格
+                    int charSize = charSize(keys[i - 1]);
+                    if (charSize < charSize(keys[i]) && bits(keys[i - 1]) == (bits(keys[i]) & mask(charSize))) {
+                        throw new IllegalArgumentException("cell " + GeoHashUtils.toBase32(bits(keys[i - 1]), charSize)
+                                + " contains another cell");
+                    }
+                }
+                return new TokenTree(Arrays.copyOf(keys, count), Arrays.copyOf(rels, count));
             }
         }
+    }
+
+    /**
+     * 栅格区间，包含从lower开始到upper之前的所有索引项；前缀区间只匹配前缀本身加关系字节的索引项
+     */
+    public static final class TokenRange {
+
+        private static final BytesRef[] EMPTY = new BytesRef[0];
+        private static final long BASE_RAM_BYTES_USED = RamUsageEstimator.shallowSizeOfInstance(TokenRange.class);
+        private static final long BYTES_REF_RAM_BYTES_USED = RamUsageEstimator.shallowSizeOfInstance(BytesRef.class);
+        private final BytesRef lower;
+        private BytesRef upper;
+        private byte[] last;
+        private final byte rel;
+        private final BytesRef[] prefixTerms;
+
+        TokenRange(byte[] token, byte rel) {
+            this.lower = new BytesRef(token);
+            this.rel = rel;
+            this.prefixTerms = EMPTY;
+            extend(token);
+        }
+
+        TokenRange(byte[] prefix) {
+            this.lower = new BytesRef(prefix);
+            this.rel = SpatialRelation.INTERSECTS.getByte();
+            SpatialRelation[] relations = SpatialRelation.values();
+            this.prefixTerms = new BytesRef[relations.length];
+            for (int i = 0; i < relations.length; i++) {
+                byte[] term = Arrays.copyOf(prefix, prefix.length + 1);
+                term[prefix.length] = relations[i].getByte();
+                prefixTerms[i] = new BytesRef(term);
+            }
+            extend(prefix);
+        }
+
+        /**
+         * 判断token是否紧接在区间最后一个栅格之后，即两者之间不可能存在其他栅格
+         */
+        boolean isAdjacent(byte[] token) {
+            if (isPrefix() || token.length != last.length) {
+                return false;
+            }
+            int i = last.length - 1;
+            while (i >= 0 && last[i] == 'z') {
+                i--;
+            }
+            if (i < 0 || token.length <= i) {
+                return false;
+            }
+            for (int j = 0; j < i; j++) {
+                if (last[j] != token[j]) {
+                    return false;
+                }
+            }
+            if (token[i] != GeoHash.nextBase32((char) last[i])) {
+                return false;
+            }
+            for (int j = i + 1; j < token.length; j++) {
+                if (token[j] != '0') {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        final void extend(byte[] token) {
+            last = token;
+            byte[] u = Arrays.copyOf(token, token.length);
+            u[u.length - 1]++;
+            upper = new BytesRef(u);
+        }
+
+        public BytesRef getLower() {
+            return lower;
+        }
+
+        public BytesRef getUpper() {
+            return upper;
+        }
 
         public byte getRel() {
             return rel;
         }
 
-        @Override
-        public String toString() {
-            String s;
-            if (rel != Byte.MIN_VALUE) {
-                s = "" + ((char) rel);
-            } else {
-                s = "c";
+        public int getTokenLength() {
+            return lower.length;
+        }
+
+        public long getLowerBits() {
+            return GeoHashUtils.fromBase32(lower.bytes, lower.offset, lower.length);
+        }
+
+        public long getLastBits() {
+            return GeoHashUtils.fromBase32(last, 0, last.length);
+        }
+
+        public boolean isPrefix() {
+            return prefixTerms.length > 0;
+        }
+
+        public BytesRef[] getPrefixTerms() {
+            return prefixTerms;
+        }
+
+        long ramBytesUsed() {
+            long bytes = BASE_RAM_BYTES_USED + sizeOf(lower) + sizeOf(upper)
+                    + RamUsageEstimator.sizeOf(last);
+            if (isPrefix()) {
+                bytes += RamUsageEstimator.shallowSizeOf(prefixTerms);
+                for (BytesRef term : prefixTerms) {
+                    bytes += sizeOf(term);
+                }
             }
-            s += Arrays.toString(tree);
-            return s;
+            return bytes;
+        }
+
+        private static long sizeOf(BytesRef bytesRef) {
+            return BYTES_REF_RAM_BYTES_USED + RamUsageEstimator.sizeOf(bytesRef.bytes);
         }
 
+        @Override
+        public String toString() {
+            return "[" + lower.utf8ToString() + ", " + upper.utf8ToString() + ")" + (char) rel;
+        }
     }
 }
@@ -0,0 +1,76 @@
+package cn.potatocake.lucene.spatial.geohash.filter;
+
+import cn.potatocake.lucene.spatial.SpatialRelation;
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.prep.PreparedGeometry;
+import java.io.IOException;
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.util.Bits;
+
+/**
+ * 栅格过滤器，匹配与查询栅格相交的全部文档，不校验图形，结果为相交结果的超集
+ * <p>
+ * @author @author Potato-Cake（potato_cake@163.com）
+ */
+public class CellSpatialFilter extends AbstractSpatialFilter {
+
+    public CellSpatialFilter(Geometry geometry) {
+        super(geometry);
+    }
+
+    public CellSpatialFilter(Geometry geometry, int minCharSize, int maxCharSize) {
+        super(geometry, minCharSize, maxCharSize);
+    }
+
+    public CellSpatialFilter(PreparedGeometry prepared, Cover cover) {
+        super(prepared, cover);
+    }
+
+    @Override
+    protected SpatialRelation getSpatialRelation() {
+        return SpatialRelation.INTERSECTS;
+    }
+
+    @Override
+    public Visitor getVisitor(AtomicReaderContext context, Bits acceptDocs, Geometry geometry) throws IOException {
+        return new Visitor(context, acceptDocs, geometry) {
+
+            @Override
+            protected void finish() throws IOException {
+            }
+
+            @Override
+            protected boolean isNeed(int docid) throws IOException {
+                return true;
+            }
+
+            @Override
+            protected boolean isNeed(Envelope envelope) {
+                return true;
+            }
+
+            @Override
+            protected boolean isNeed(double x, double y) {
+                return true;
+            }
+
+            @Override
+            protected void start() throws IOException {
+            }
+
+            @Override
+            protected boolean visit(byte cellRelation, byte relation) throws IOException {
+                collectDocs();
+                return true;
+            }
+
+            @Override
+            protected boolean visitPoint(byte relation) throws IOException {
+                collectPointDocs();
+                return true;
+            }
+        };
+    }
+
+}
@@ -0,0 +1,122 @@
+package cn.potatocake.lucene.spatial.geohash.filter;
+
+import cn.potatocake.lucene.spatial.SpatialRelation;
+import cn.potatocake.lucene.spatial.geohash.utils.Circle;
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.prep.PreparedGeometryFactory;
+import java.io.IOException;
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.util.Bits;
+
+/**
+ * 圆形相交过滤器，命中与圆心球面距离不超过半径的文档
+ * <p>
+ * 查询栅格按栅格到圆心的最近、最远距离划分，候选文档按半正矢公式校验，不使用缓冲区多边形
+ * <p>
+ * @author Potato-Cake（potato_cake@163.com）
+ */
+public class CircleSpatialFilter extends AbstractSpatialFilter {
+
+    private final Circle circle;
+
+    public CircleSpatialFilter(Circle circle, int minCharSize, int maxCharSize) {
+        this(circle, Cover.build(circle, minCharSize, maxCharSize, 0));
+    }
+
+    /**
+     * @param circle
+     * @param cover  由同一圆形生成的查询栅格
+     */
+    public CircleSpatialFilter(Circle circle, Cover cover) {
+        super(PreparedGeometryFactory.prepare(circle.getCenter()), cover);
+        this.circle = circle;
+    }
+
+    public Circle getCircle() {
+        return circle;
+    }
+
+    @Override
+    protected SpatialRelation getSpatialRelation() {
+        return SpatialRelation.INTERSECTS;
+    }
+
+    @Override
+    public Visitor getVisitor(AtomicReaderContext context, Bits acceptDocs, final Geometry geometry) throws IOException {
+        return new Visitor(context, acceptDocs, geometry) {
+
+            @Override
+            protected void finish() throws IOException {
+            }
+
+            @Override
+            protected boolean isNeed(int docid) throws IOException {
+                Geometry g = getGeometry(docid);
+                return g != null && circle.intersects(g);
+            }
+
+            @Override
+            protected boolean isNeed(Envelope envelope) {
+                return circle.intersects(envelope);
+            }
+
+            @Override
+            protected boolean isNeed(double x, double y) {
+                return circle.contains(x, y);
+            }
+
+            @Override
+            protected void start() throws IOException {
+            }
+
+            @Override
+            protected boolean visit(byte cellRelation, byte relation) throws IOException {
+                if (relation == SpatialRelation.CONTAINS.getByte()) {
+                    collectDocs();
+                    return true;
+                } else if (relation == SpatialRelation.INTERSECTS.getByte()
+                        || relation == SpatialRelation.WITHIN.getByte()) {
+                    if (cellRelation == SpatialRelation.CONTAINS.getByte()) {
+                        collectDocs();
+                    } else {
+                        checkDocs();
+                    }
+                    return true;
+                }
+                return false;
+            }
+
+            @Override
+            protected boolean visitPoint(byte relation) throws IOException {
+                if (relation == SpatialRelation.CONTAINS.getByte()) {
+                    collectPointDocs();
+                } else {
+                    checkPointDocs();
+                }
+                return true;
+            }
+        };
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || !getClass().equals(o.getClass())) {
+            return false;
+        }
+        return circle.equals(((CircleSpatialFilter) o).circle);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * circle.hashCode() + getSpatialRelation().getByte();
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "(" + getSpatialRelation() + ", " + circle + ")";
+    }
+}
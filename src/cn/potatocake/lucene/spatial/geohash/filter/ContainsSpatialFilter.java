@@ -1,10 +1,11 @@
 package cn.potatocake.lucene.spatial.geohash.filter;
 
 import cn.potatocake.lucene.spatial.SpatialRelation;
-import cn.potatocake.lucene.spatial.geohash.utils.GeometryMaker;
+import com.vividsolutions.jts.geom.Envelope;
 import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.Location;
+import com.vividsolutions.jts.geom.prep.PreparedGeometry;
 import java.io.IOException;
-import org.apache.lucene.document.Document;
 import org.apache.lucene.index.AtomicReaderContext;
 import org.apache.lucene.util.Bits;
 
@@ -19,6 +20,14 @@ public class ContainsSpatialFilter extends AbstractSpatialFilter {
         super(geometry);
     }
 
+    public ContainsSpatialFilter(Geometry geometry, int minCharSize, int maxCharSize) {
+        super(geometry, minCharSize, maxCharSize);
+    }
+
+    public ContainsSpatialFilter(PreparedGeometry prepared, Cover cover) {
+        super(prepared, cover);
+    }
+
     @Override
     protected SpatialRelation getSpatialRelation() {
         return SpatialRelation.CONTAINS;
@@ -34,9 +43,18 @@ public class ContainsSpatialFilter extends AbstractSpatialFilter {
 
             @Override
             protected boolean isNeed(int docid) throws IOException {
-                Document document = context.reader().document(docid);
-                Geometry g = GeometryMaker.fromDocument(document);
-                return geometry.contains(g);
+                Geometry g = getGeometry(docid);
+                return g != null && prepared.contains(g);
+            }
+
+            @Override
+            protected boolean isNeed(Envelope envelope) {
+                return queryEnvelope.contains(envelope);
+            }
+
+            @Override
+            protected boolean isNeed(double x, double y) {
+                return locate(x, y) == Location.INTERIOR;
             }
 
             @Override
@@ -52,13 +70,25 @@ public class ContainsSpatialFilter extends AbstractSpatialFilter {
                         checkDocs();
                     }
                     return true;
-                } else if (relation == SpatialRelation.INTERSECTS.getByte()) {
+                } else if (relation == SpatialRelation.INTERSECTS.getByte()
+                        || relation == SpatialRelation.WITHIN.getByte()) {
                     checkDocs();
                     return true;
                 }
                 return false;
             }
 
+            @Override
+            protected boolean visitPoint(byte relation) throws IOException {
+                // 与栅格索引一致，被包含栅格中的点直接命中
+                if (relation == SpatialRelation.CONTAINS.getByte()) {
+                    collectPointDocs();
+                } else {
+                    checkPointDocs();
+                }
+                return true;
+            }
+
         };
     }
 
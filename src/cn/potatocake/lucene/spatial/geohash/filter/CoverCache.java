@@ -0,0 +1,183 @@
+package cn.potatocake.lucene.spatial.geohash.filter;
+
+import cn.potatocake.lucene.spatial.geohash.filter.AbstractSpatialFilter.Cover;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.prep.PreparedGeometry;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.apache.lucene.util.Accountable;
+import org.apache.lucene.util.RamUsageEstimator;
+
+/**
+ * 查询栅格缓存，按图形、精度及栅格数上限缓存Cover，超出内存上限时淘汰最久未使用的项
+ * <p>
+ * 每项占用的内存包括Cover及作为键的查询图形（按坐标数估算）
+ * <p>
+ * 线程安全，缓存中的图形不可再修改
+ * <p>
+ * @author Potato-Cake（potato_cake@163.com）
+ */
+public class CoverCache implements Accountable {
+
+    private final long maxRamBytes;
+    private final LinkedHashMap<Key, Cover> covers = new LinkedHashMap<>(16, 0.75f, true);
+    private long ramBytesUsed;
+    private long hitCount;
+    private long missCount;
+    private long evictionCount;
+
+    /**
+     * @param maxRamBytes 缓存占用内存上限（字节）
+     */
+    public CoverCache(long maxRamBytes) {
+        if (maxRamBytes <= 0) {
+            throw new IllegalArgumentException("maxRamBytes must be positive: " + maxRamBytes);
+        }
+        this.maxRamBytes = maxRamBytes;
+    }
+
+    /**
+     * 获取图形的查询栅格，未缓存时生成并放入缓存
+     * <p>
+     * @param prepared
+     * @param minCharSize 索引中最粗的栅格精度
+     * @param maxCharSize 查询图形边界栅格精度
+     *                    <p>
+     * @return
+     */
+    public Cover getCover(PreparedGeometry prepared, int minCharSize, int maxCharSize) {
+        return getCover(prepared, minCharSize, maxCharSize, 0);
+    }
+
+    /**
+     * 获取图形的查询栅格，未缓存时生成并放入缓存
+     * <p>
+     * @param prepared
+     * @param minCharSize 索引中最粗的栅格精度
+     * @param maxCharSize 查询图形边界栅格精度
+     * @param maxCells    栅格数上限，不大于0时不限制
+     *                    <p>
+     * @return
+     */
+    public Cover getCover(PreparedGeometry prepared, int minCharSize, int maxCharSize, int maxCells) {
+        Key key = new Key(prepared.getGeometry(), minCharSize, maxCharSize, maxCells);
+        synchronized (this) {
+            Cover cover = covers.get(key);
+            if (cover != null) {
+                hitCount++;
+                return cover;
+            }
+            missCount++;
+        }
+        // 生成栅格较耗时，不占用锁；并发生成同一图形时以先放入的为准
+        Cover cover = Cover.build(prepared, minCharSize, maxCharSize, maxCells);
+        long bytes = key.ramBytesUsed() + cover.ramBytesUsed();
+        if (bytes > maxRamBytes) {
+            return cover;
+        }
+        synchronized (this) {
+            Cover old = covers.get(key);
+            if (old != null) {
+                return old;
+            }
+            covers.put(key, cover);
+            ramBytesUsed += bytes;
+            Iterator<Map.Entry<Key, Cover>> iter = covers.entrySet().iterator();
+            while (ramBytesUsed > maxRamBytes && iter.hasNext()) {
+                Map.Entry<Key, Cover> eldest = iter.next();
+                iter.remove();
+                ramBytesUsed -= eldest.getKey().ramBytesUsed() + eldest.getValue().ramBytesUsed();
+                evictionCount++;
+            }
+        }
+        return cover;
+    }
+
+    public synchronized void clear() {
+        covers.clear();
+        ramBytesUsed = 0;
+    }
+
+    public synchronized int size() {
+        return covers.size();
+    }
+
+    public long getMaxRamBytes() {
+        return maxRamBytes;
+    }
+
+    @Override
+    public synchronized long ramBytesUsed() {
+        return ramBytesUsed;
+    }
+
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    public synchronized long getEvictionCount() {
+        return evictionCount;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "CoverCache[size=" + covers.size() + ", ramBytesUsed=" + ramBytesUsed + ", maxRamBytes=" + maxRamBytes
+                + ", hits=" + hitCount + ", misses=" + missCount + ", evictions=" + evictionCount + "]";
+    }
+
+    private static final class Key implements Accountable {
+
+        private static final long COORDINATE_BYTES = RamUsageEstimator.NUM_BYTES_OBJECT_REF
+                + RamUsageEstimator.alignObjectSize(RamUsageEstimator.NUM_BYTES_OBJECT_HEADER + 3 * RamUsageEstimator.NUM_BYTES_DOUBLE);
+        private static final long GEOMETRY_BYTES = 128; // 每个简单图形的对象、坐标数组及外包矩形
+
+        private final Geometry geometry;
+        private final int minCharSize;
+        private final int maxCharSize;
+        private final int maxCells;
+        private final int hashCode;
+        private final long ramBytesUsed;
+
+        Key(Geometry geometry, int minCharSize, int maxCharSize, int maxCells) {
+            this.geometry = geometry;
+            this.minCharSize = minCharSize;
+            this.maxCharSize = maxCharSize;
+            this.maxCells = Math.max(maxCells, 0);
+            this.hashCode = ((geometry.hashCode() * 31 + minCharSize) * 31 + maxCharSize) * 31 + this.maxCells;
+            this.ramBytesUsed = RamUsageEstimator.alignObjectSize(RamUsageEstimator.NUM_BYTES_OBJECT_HEADER
+                    + RamUsageEstimator.NUM_BYTES_OBJECT_REF + 4 * RamUsageEstimator.NUM_BYTES_INT + RamUsageEstimator.NUM_BYTES_LONG)
+                    + geometry.getNumPoints() * COORDINATE_BYTES + geometry.getNumGeometries() * GEOMETRY_BYTES;
+        }
+
+        /**
+         * 键及查询图形的估算内存占用
+         */
+        @Override
+        public long ramBytesUsed() {
+            return ramBytesUsed;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key that = (Key) o;
+            return minCharSize == that.minCharSize && maxCharSize == that.maxCharSize && maxCells == that.maxCells
+                    && geometry.equalsExact(that.geometry);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+}
@@ -1,30 +1,218 @@
 package cn.potatocake.lucene.spatial.geohash.filter;
 
 import cn.potatocake.lucene.spatial.SpatialRelation;
+import cn.potatocake.lucene.spatial.geohash.GeohashTreeSpatialStrategy;
 import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.prep.PreparedGeometry;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.lucene.index.AtomicReader;
 import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.search.DocIdSet;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.FieldCache;
 import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.FixedBitSet;
 
 /**
  * 脱离过滤器
+ * <p>
+ * 按段取相交结果的补集：只有与查询栅格相交的文档需要遍历索引项、校验图形，其余有图形的文档直接满足条件
  * 
  * @author @author Potato-Cake（potato_cake@163.com）
  */
-public class DisjointSpatialFilter extends AbstractSpatialFilter {
+public class DisjointSpatialFilter extends IntersectsSpatialFilter {
 
     public DisjointSpatialFilter(Geometry geometry) {
         super(geometry);
     }
+
+    public DisjointSpatialFilter(Geometry geometry, int minCharSize, int maxCharSize) {
+        super(geometry, minCharSize, maxCharSize);
+    }
+
+    public DisjointSpatialFilter(PreparedGeometry prepared, Cover cover) {
+        super(prepared, cover);
+    }
     
     @Override
     protected SpatialRelation getSpatialRelation() {
         return SpatialRelation.DISJOINT;
     }
 
+    /**
+     * 返回的DocIdSet在首次使用时才计算相交结果，结果为FixedBitSet，迭代时按nextSetBit跳转
+     */
+    @Override
+    public DocIdSet getDocIdSet(final AtomicReaderContext context, final Bits acceptDocs) throws IOException {
+        return new DocIdSet() {
+
+            private FixedBitSet bits;
+
+            @Override
+            public Bits bits() throws IOException {
+                if (bits == null) {
+                    Visitor visitor = getVisitor(context, acceptDocs, geometry);
+                    bits = getDisjointDocs(context.reader(), acceptDocs, visitor.getDocIdSet() == null ? null : visitor.getMatched());
+                }
+                return bits;
+            }
+
+            @Override
+            public DocIdSetIterator iterator() throws IOException {
+                bits();
+                return bits.iterator();
+            }
+        };
+    }
+
+    /**
+     * 相交结果的候选文档只在迭代到时校验，校验通过即不满足脱离条件；
+     * 其余文档按补集的nextSetBit跳转，cost()为补集的文档数
+     */
+    @Override
+    public DocIdSetIterator getLazyIterator(AtomicReaderContext context, final Bits acceptDocs) throws IOException {
+        final Visitor visitor = getVisitor(context, acceptDocs, geometry);
+        final boolean hasCandidates = visitor.collectCandidates();
+        final DocSet candidates = hasCandidates ? visitor.getCandidates() : null;
+        final FixedBitSet disjoint = getDisjointDocs(context.reader(), acceptDocs, hasCandidates ? visitor.getMatched() : null);
+        final int maxDoc = disjoint.length();
+        final long cost = disjoint.cardinality();
+        return new DocIdSetIterator() {
+
+            private int doc = -1;
+
+            @Override
+            public int docID() {
+                return doc;
+            }
+
+            @Override
+            public int nextDoc() throws IOException {
+                return advance(doc + 1);
+            }
+
+            @Override
+            public int advance(int target) throws IOException {
+                int next = target < maxDoc ? disjoint.nextSetBit(target) : -1;
+                while (next >= 0) {
+                    if (candidates == null || !candidates.get(next) || !visitor.verify(next)) {
+                        return doc = next;
+                    }
+                    next = next + 1 < maxDoc ? disjoint.nextSetBit(next + 1) : -1;
+                }
+                if (hasCandidates) {
+                    visitor.reportVerified();
+                }
+                return doc = NO_MORE_DOCS;
+            }
+
+            @Override
+            public long cost() {
+                return cost;
+            }
+        };
+    }
+
+    /**
+     * 文档有图形时才遍历索引项，与查询栅格相交的候选文档只校验该文档
+     */
     @Override
-    public Visitor getVisitor(AtomicReaderContext context, Bits acceptDocs, Geometry geometry) throws IOException {
-        throw new UnsupportedOperationException("Not supported yet."); 
+    boolean matches(AtomicReaderContext context, Bits acceptDocs, int doc) throws IOException {
+        if (acceptDocs != null && !acceptDocs.get(doc)) {
+            return false;
+        }
+        boolean hasShape = false;
+        for (Bits bits : getShapeDocs(context.reader())) {
+            if (bits.get(doc)) {
+                hasShape = true;
+                break;
+            }
+        }
+        if (!hasShape) {
+            return false;
+        }
+        Visitor visitor = getVisitor(context, acceptDocs, geometry);
+        if (!visitor.collectCandidates()) {
+            return true;
+        }
+        return !visitor.getMatched().get(doc) && !(visitor.getCandidates().get(doc) && visitor.verify(doc));
+    }
+
+    /**
+     * 有图形、未被删除且不在相交结果中的文档
+     * <p>
+     * @param reader
+     * @param acceptDocs
+     * @param intersects 相交结果，为null时视为空
+     *                   <p>
+     * @return
+     * @throws IOException
+     */
+    private FixedBitSet getDisjointDocs(AtomicReader reader, Bits acceptDocs, DocSet intersects) throws IOException {
+        FixedBitSet docs = getDocsWithField(reader);
+        if (acceptDocs instanceof FixedBitSet) {
+            docs.and((FixedBitSet) acceptDocs);
+        } else if (acceptDocs != null) {
+            for (int doc = 0; doc < docs.length(); doc++) {
+                if (docs.get(doc) && !acceptDocs.get(doc)) {
+                    docs.clear(doc);
+                }
+            }
+        }
+        if (intersects != null) {
+            for (int doc = intersects.nextSetBit(0); doc >= 0; doc = intersects.nextSetBit(doc + 1)) {
+                docs.clear(doc);
+            }
+        }
+        return docs;
+    }
+
+    /**
+     * 有图形的文档：图形DocValues、栅格索引及数值点索引的并集，合并后的段中部分文档可能只有其中一种
+     */
+    private FixedBitSet getDocsWithField(AtomicReader reader) throws IOException {
+        FixedBitSet docs = new FixedBitSet(reader.maxDoc());
+        for (Bits bits : getShapeDocs(reader)) {
+            or(docs, bits);
+        }
+        return docs;
+    }
+
+    /**
+     * 段中存在的各图形来源的文档，栅格及数值点索引的结果缓存在FieldCache中
+     */
+    private List<Bits> getShapeDocs(AtomicReader reader) throws IOException {
+        List<Bits> sources = new ArrayList<>(3);
+        Bits docValues = reader.getDocsWithField(GeohashTreeSpatialStrategy.SHAPE_DV_FIELD_NAME);
+        if (docValues != null) {
+            sources.add(docValues);
+        }
+        if (reader.terms(GeohashTreeSpatialStrategy.CELL_FIELD_NAME) != null) {
+            sources.add(FieldCache.DEFAULT.getDocsWithField(reader, GeohashTreeSpatialStrategy.CELL_FIELD_NAME));
+        }
+        if (reader.terms(GeohashTreeSpatialStrategy.POINT_FIELD_NAME) != null) {
+            sources.add(FieldCache.DEFAULT.getDocsWithField(reader, GeohashTreeSpatialStrategy.POINT_FIELD_NAME));
+        }
+        return sources;
+    }
+
+    private static void or(FixedBitSet docs, Bits bits) {
+        if (bits instanceof Bits.MatchNoBits) {
+            return;
+        }
+        if (bits instanceof FixedBitSet) {
+            docs.or((FixedBitSet) bits);
+        } else if (bits instanceof Bits.MatchAllBits) {
+            docs.set(0, docs.length());
+        } else {
+            for (int i = 0; i < docs.length(); i++) {
+                if (bits.get(i)) {
+                    docs.set(i);
+                }
+            }
+        }
     }
 
 }
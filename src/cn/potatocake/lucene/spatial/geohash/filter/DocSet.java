@@ -0,0 +1,263 @@
+package cn.potatocake.lucene.spatial.geohash.filter;
+
+import java.util.Arrays;
+import org.apache.lucene.search.DocIdSet;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.FixedBitSet;
+import org.apache.lucene.util.RamUsageEstimator;
+
+/**
+ * 单个段内的文档集合，文档较少时存放在开放寻址哈希表中，超过maxDoc/256后转为FixedBitSet
+ * <p>
+ * 命中文档通常远少于段的文档数，不必每次查询为每个段分配maxDoc位
+ * <p>
+ * @author Potato-Cake（potato_cake@163.com）
+ */
+final class DocSet implements Bits {
+
+    private static final int EMPTY = -1;
+    private static final int MIN_THRESHOLD = 16;
+    private final int maxDoc;
+    private final int threshold; // 稀疏存储的最大文档数
+    private int[] table;
+    private int size;
+    private int[] sorted; // 稀疏存储时按需排序的文档号，修改后失效
+    private FixedBitSet bits;
+
+    DocSet(int maxDoc) {
+        this.maxDoc = maxDoc;
+        this.threshold = maxDoc >>> 8;
+        if (threshold < MIN_THRESHOLD) {
+            bits = new FixedBitSet(maxDoc);
+        } else {
+            table = newTable(MIN_THRESHOLD);
+        }
+    }
+
+    private static int[] newTable(int capacity) {
+        int[] t = new int[capacity];
+        Arrays.fill(t, EMPTY);
+        return t;
+    }
+
+    private static int slot(int doc, int mask) {
+        int h = doc * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    @Override
+    public boolean get(int doc) {
+        if (bits != null) {
+            return bits.get(doc);
+        }
+        int mask = table.length - 1;
+        for (int slot = slot(doc, mask); table[slot] != EMPTY; slot = (slot + 1) & mask) {
+            if (table[slot] == doc) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public int length() {
+        return maxDoc;
+    }
+
+    public void set(int doc) {
+        getAndSet(doc);
+    }
+
+    /**
+     * @param doc
+     *            <p>
+     * @return 加入前是否已存在
+     */
+    public boolean getAndSet(int doc) {
+        if (bits != null) {
+            return bits.getAndSet(doc);
+        }
+        int mask = table.length - 1;
+        int slot = slot(doc, mask);
+        for (; table[slot] != EMPTY; slot = (slot + 1) & mask) {
+            if (table[slot] == doc) {
+                return true;
+            }
+        }
+        if (size >= threshold) {
+            toBitSet();
+            bits.set(doc);
+            return false;
+        }
+        table[slot] = doc;
+        size++;
+        sorted = null;
+        // 装载因子不超过0.5
+        if (size << 1 > table.length) {
+            rehash(table.length << 1);
+        }
+        return false;
+    }
+
+    private void rehash(int capacity) {
+        int[] old = table;
+        table = newTable(capacity);
+        int mask = capacity - 1;
+        for (int doc : old) {
+            if (doc != EMPTY) {
+                int slot = slot(doc, mask);
+                while (table[slot] != EMPTY) {
+                    slot = (slot + 1) & mask;
+                }
+                table[slot] = doc;
+            }
+        }
+    }
+
+    private void toBitSet() {
+        bits = new FixedBitSet(maxDoc);
+        for (int doc : table) {
+            if (doc != EMPTY) {
+                bits.set(doc);
+            }
+        }
+        table = null;
+        sorted = null;
+        size = 0;
+    }
+
+    /**
+     * 移除other中的文档
+     */
+    public void andNot(DocSet other) {
+        if (bits != null) {
+            if (other.bits != null) {
+                bits.andNot(other.bits);
+            } else {
+                for (int doc : other.table) {
+                    if (doc != EMPTY) {
+                        bits.clear(doc);
+                    }
+                }
+            }
+            return;
+        }
+        int[] old = table;
+        table = newTable(old.length);
+        size = 0;
+        sorted = null;
+        for (int doc : old) {
+            if (doc != EMPTY && !other.get(doc)) {
+                set(doc);
+            }
+        }
+    }
+
+    public int cardinality() {
+        return bits != null ? bits.cardinality() : size;
+    }
+
+    /**
+     * @param from
+     *             <p>
+     * @return 不小于from的第一个文档，不存在时返回-1
+     */
+    public int nextSetBit(int from) {
+        if (from >= maxDoc) {
+            return -1;
+        }
+        if (bits != null) {
+            return bits.nextSetBit(from);
+        }
+        int[] docs = sortedDocs();
+        int index = Arrays.binarySearch(docs, from);
+        if (index < 0) {
+            index = -index - 1;
+        }
+        return index < docs.length ? docs[index] : -1;
+    }
+
+    private int[] sortedDocs() {
+        if (sorted == null) {
+            int[] docs = new int[size];
+            int i = 0;
+            for (int doc : table) {
+                if (doc != EMPTY) {
+                    docs[i++] = doc;
+                }
+            }
+            Arrays.sort(docs);
+            sorted = docs;
+        }
+        return sorted;
+    }
+
+    /**
+     * 文档较多时直接返回FixedBitSet，否则返回按文档号排列的数组
+     */
+    public DocIdSet toDocIdSet() {
+        if (bits != null) {
+            return bits;
+        }
+        return new SortedDocIdSet(sortedDocs());
+    }
+
+    /**
+     * 按文档号排列的稀疏结果，不支持随机访问，FilteredQuery会按迭代方式与查询求交集
+     */
+    static final class SortedDocIdSet extends DocIdSet {
+
+        private static final long BASE_RAM_BYTES_USED = RamUsageEstimator.shallowSizeOfInstance(SortedDocIdSet.class);
+        private final int[] docs;
+
+        SortedDocIdSet(int[] docs) {
+            this.docs = docs;
+        }
+
+        @Override
+        public DocIdSetIterator iterator() {
+            return new DocIdSetIterator() {
+
+                private int index = -1;
+                private int doc = -1;
+
+                @Override
+                public int docID() {
+                    return doc;
+                }
+
+                @Override
+                public int nextDoc() {
+                    return doc = ++index < docs.length ? docs[index] : NO_MORE_DOCS;
+                }
+
+                @Override
+                public int advance(int target) {
+                    if (index + 1 >= docs.length) {
+                        index = docs.length;
+                        return doc = NO_MORE_DOCS;
+                    }
+                    int i = Arrays.binarySearch(docs, index + 1, docs.length, target);
+                    index = i < 0 ? -i - 1 : i;
+                    return doc = index < docs.length ? docs[index] : NO_MORE_DOCS;
+                }
+
+                @Override
+                public long cost() {
+                    return docs.length;
+                }
+            };
+        }
+
+        @Override
+        public boolean isCacheable() {
+            return true;
+        }
+
+        @Override
+        public long ramBytesUsed() {
+            return BASE_RAM_BYTES_USED + RamUsageEstimator.sizeOf(docs);
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package cn.potatocake.lucene.spatial.geohash.filter;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 过滤器执行统计，同一过滤器在所有段、线程上累计，每个段遍历结束时汇总一次
+ * <p>
+ * 只在过滤器开启统计或设置了监听器时累计，否则遍历时不汇总、不分配SegmentStats
+ * <p>
+ * 校验耗时只在过滤器设置了监听器时记录
+ * <p>
+ * @author Potato-Cake（potato_cake@163.com）
+ */
+public class FilterStats {
+
+    private final int coverCells; // 查询栅格数
+    private final long coverBuildNanos; // 查询栅格生成耗时，取自缓存时为首次生成的耗时
+    private final AtomicLong segments = new AtomicLong();
+    private final AtomicLong termsEnumerated = new AtomicLong();
+    private final AtomicLong termsMatched = new AtomicLong();
+    private final AtomicLong docsCollected = new AtomicLong();
+    private final AtomicLong docsChecked = new AtomicLong();
+    private final AtomicLong docsDeferred = new AtomicLong();
+    private final AtomicLong envelopeChecks = new AtomicLong(); // 比较过外包矩形的文档数
+    private final AtomicLong envelopeRejects = new AtomicLong(); // 外包矩形不满足条件、未读取图形的文档数
+    private final AtomicLong verifyNanos = new AtomicLong();
+
+    FilterStats(int coverCells, long coverBuildNanos) {
+        this.coverCells = coverCells;
+        this.coverBuildNanos = coverBuildNanos;
+    }
+
+    void add(SegmentStats stats) {
+        segments.incrementAndGet();
+        termsEnumerated.addAndGet(stats.getTermsEnumerated());
+        termsMatched.addAndGet(stats.getTermsMatched());
+        docsCollected.addAndGet(stats.getDocsCollected());
+        docsChecked.addAndGet(stats.getDocsChecked());
+        docsDeferred.addAndGet(stats.getDocsDeferred());
+        envelopeChecks.addAndGet(stats.getEnvelopeChecks());
+        envelopeRejects.addAndGet(stats.getEnvelopeRejects());
+        verifyNanos.addAndGet(stats.getVerifyNanos());
+    }
+
+    /**
+     * 两阶段查询迭代结束时汇总迭代中校验的文档
+     */
+    void addVerified(long count, long nanos) {
+        docsChecked.addAndGet(count);
+        if (nanos > 0) {
+            verifyNanos.addAndGet(nanos);
+        }
+    }
+
+    public int getCoverCells() {
+        return coverCells;
+    }
+
+    public long getCoverBuildNanos() {
+        return coverBuildNanos;
+    }
+
+    public long getSegments() {
+        return segments.get();
+    }
+
+    public long getTermsEnumerated() {
+        return termsEnumerated.get();
+    }
+
+    public long getTermsMatched() {
+        return termsMatched.get();
+    }
+
+    public long getDocsCollected() {
+        return docsCollected.get();
+    }
+
+    /**
+     * 校验过图形或坐标的文档数，包括两阶段查询中迭代时校验的文档
+     */
+    public long getDocsChecked() {
+        return docsChecked.get();
+    }
+
+    public long getDocsDeferred() {
+        return docsDeferred.get();
+    }
+
+    public long getEnvelopeChecks() {
+        return envelopeChecks.get();
+    }
+
+    public long getEnvelopeRejects() {
+        return envelopeRejects.get();
+    }
+
+    /**
+     * 外包矩形排除的比例，没有比较过时返回0
+     */
+    public double getEnvelopeRejectRate() {
+        long checks = envelopeChecks.get();
+        return checks == 0 ? 0 : (double) envelopeRejects.get() / checks;
+    }
+
+    public long getVerifyNanos() {
+        return verifyNanos.get();
+    }
+
+    @Override
+    public String toString() {
+        return "FilterStats[coverCells=" + coverCells + ", coverBuildNanos=" + coverBuildNanos + ", segments=" + segments.get()
+                + ", termsEnumerated=" + termsEnumerated.get() + ", termsMatched=" + termsMatched.get()
+                + ", docsCollected=" + docsCollected.get() + ", docsChecked=" + docsChecked.get()
+                + ", docsDeferred=" + docsDeferred.get() + ", envelopeChecks=" + envelopeChecks.get()
+                + ", envelopeRejects=" + envelopeRejects.get() + ", verifyNanos=" + verifyNanos.get() + "]";
+    }
+}
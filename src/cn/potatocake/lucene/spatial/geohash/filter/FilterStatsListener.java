@@ -0,0 +1,22 @@
+package cn.potatocake.lucene.spatial.geohash.filter;
+
+import org.apache.lucene.index.AtomicReaderContext;
+
+/**
+ * 过滤器执行监听器，用于记录慢查询、上报监控指标
+ * <p>
+ * 设置监听器后过滤器才对校验及遍历计时；同一过滤器可能在多个线程中并发遍历不同的段，实现需线程安全
+ * <p>
+ * @author Potato-Cake（potato_cake@163.com）
+ */
+public interface FilterStatsListener {
+
+    /**
+     * 过滤器在一个段上遍历结束后调用
+     * <p>
+     * @param filter  过滤器，查询栅格及累计统计见filter.getStats()
+     * @param context 段
+     * @param stats   本次遍历的统计
+     */
+    void onSegment(AbstractSpatialFilter filter, AtomicReaderContext context, SegmentStats stats);
+}
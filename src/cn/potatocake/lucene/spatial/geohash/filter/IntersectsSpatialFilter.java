@@ -1,10 +1,11 @@
 package cn.potatocake.lucene.spatial.geohash.filter;
 
 import cn.potatocake.lucene.spatial.SpatialRelation;
-import cn.potatocake.lucene.spatial.geohash.utils.GeometryMaker;
+import com.vividsolutions.jts.geom.Envelope;
 import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.Location;
+import com.vividsolutions.jts.geom.prep.PreparedGeometry;
 import java.io.IOException;
-import org.apache.lucene.document.Document;
 import org.apache.lucene.index.AtomicReaderContext;
 import org.apache.lucene.util.Bits;
 
@@ -19,6 +20,14 @@ public class IntersectsSpatialFilter extends AbstractSpatialFilter {
         super(geometry);
     }
 
+    public IntersectsSpatialFilter(Geometry geometry, int minCharSize, int maxCharSize) {
+        super(geometry, minCharSize, maxCharSize);
+    }
+
+    public IntersectsSpatialFilter(PreparedGeometry prepared, Cover cover) {
+        super(prepared, cover);
+    }
+
     @Override
     protected SpatialRelation getSpatialRelation() {
         return SpatialRelation.INTERSECTS;
@@ -34,9 +43,18 @@ public class IntersectsSpatialFilter extends AbstractSpatialFilter {
 
             @Override
             protected boolean isNeed(int docid) throws IOException {
-                Document document = context.reader().document(docid);
-                Geometry g = GeometryMaker.fromDocument(document);
-                return geometry.intersects(g);
+                Geometry g = getGeometry(docid);
+                return g != null && prepared.intersects(g);
+            }
+
+            @Override
+            protected boolean isNeed(Envelope envelope) {
+                return envelope.intersects(queryEnvelope);
+            }
+
+            @Override
+            protected boolean isNeed(double x, double y) {
+                return locate(x, y) != Location.EXTERIOR;
             }
 
             @Override
@@ -48,7 +66,8 @@ public class IntersectsSpatialFilter extends AbstractSpatialFilter {
                 if (relation == SpatialRelation.CONTAINS.getByte()) {
                     collectDocs();
                     return true;
-                } else if (relation == SpatialRelation.INTERSECTS.getByte()) {
+                } else if (relation == SpatialRelation.INTERSECTS.getByte()
+                        || relation == SpatialRelation.WITHIN.getByte()) {
                     if (cellRelation == SpatialRelation.CONTAINS.getByte()) {
                         collectDocs();
                     } else {
@@ -58,6 +77,16 @@ public class IntersectsSpatialFilter extends AbstractSpatialFilter {
                 }
                 return false;
             }
+
+            @Override
+            protected boolean visitPoint(byte relation) throws IOException {
+                if (relation == SpatialRelation.CONTAINS.getByte()) {
+                    collectPointDocs();
+                } else {
+                    checkPointDocs();
+                }
+                return true;
+            }
         };
     }
 
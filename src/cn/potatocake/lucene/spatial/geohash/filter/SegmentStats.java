@@ -0,0 +1,105 @@
+package cn.potatocake.lucene.spatial.geohash.filter;
+
+/**
+ * 过滤器在单个段上一次遍历的统计，只读
+ * <p>
+ * 两阶段查询中延迟校验的文档在遍历结束时尚未校验，记为docsDeferred，其校验次数及耗时只累计到FilterStats
+ * <p>
+ * @author Potato-Cake（potato_cake@163.com）
+ */
+public class SegmentStats {
+
+    private final int maxDoc;
+    private final long termsEnumerated;
+    private final long termsMatched;
+    private final long docsCollected;
+    private final long docsChecked;
+    private final long docsDeferred;
+    private final long envelopeChecks;
+    private final long envelopeRejects;
+    private final long verifyNanos;
+    private final long elapsedNanos;
+
+    SegmentStats(int maxDoc, long termsEnumerated, long termsMatched, long docsCollected, long docsChecked,
+            long docsDeferred, long envelopeChecks, long envelopeRejects, long verifyNanos, long elapsedNanos) {
+        this.maxDoc = maxDoc;
+        this.termsEnumerated = termsEnumerated;
+        this.termsMatched = termsMatched;
+        this.docsCollected = docsCollected;
+        this.docsChecked = docsChecked;
+        this.docsDeferred = docsDeferred;
+        this.envelopeChecks = envelopeChecks;
+        this.envelopeRejects = envelopeRejects;
+        this.verifyNanos = verifyNanos;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    public int getMaxDoc() {
+        return maxDoc;
+    }
+
+    /**
+     * 落在查询栅格区间内的索引项数
+     */
+    public long getTermsEnumerated() {
+        return termsEnumerated;
+    }
+
+    /**
+     * 其中需要读取文档的索引项数
+     */
+    public long getTermsMatched() {
+        return termsMatched;
+    }
+
+    /**
+     * 不校验图形直接命中的文档数（含重复）
+     */
+    public long getDocsCollected() {
+        return docsCollected;
+    }
+
+    /**
+     * 校验过图形或坐标的文档数
+     */
+    public long getDocsChecked() {
+        return docsChecked;
+    }
+
+    /**
+     * 留待两阶段查询迭代时校验的文档数
+     */
+    public long getDocsDeferred() {
+        return docsDeferred;
+    }
+
+    public long getEnvelopeChecks() {
+        return envelopeChecks;
+    }
+
+    public long getEnvelopeRejects() {
+        return envelopeRejects;
+    }
+
+    /**
+     * 校验耗时（纳秒），未设置监听器时不计时，为0
+     */
+    public long getVerifyNanos() {
+        return verifyNanos;
+    }
+
+    /**
+     * 遍历总耗时（纳秒），未设置监听器时不计时，为0
+     */
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "SegmentStats[maxDoc=" + maxDoc + ", termsEnumerated=" + termsEnumerated + ", termsMatched=" + termsMatched
+                + ", docsCollected=" + docsCollected + ", docsChecked=" + docsChecked + ", docsDeferred=" + docsDeferred
+                + ", envelopeChecks=" + envelopeChecks + ", envelopeRejects=" + envelopeRejects
+                + ", verifyNanos=" + verifyNanos + ", elapsedNanos=" + elapsedNanos + "]";
+    }
+}
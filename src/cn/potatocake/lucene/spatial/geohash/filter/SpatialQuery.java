@@ -0,0 +1,157 @@
+package cn.potatocake.lucene.spatial.geohash.filter;
+
+import java.io.IOException;
+import java.util.Set;
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.ComplexExplanation;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.Explanation;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.search.Weight;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.ToStringUtils;
+
+/**
+ * 图形查询，所有命中文档得分均为boost
+ * <p>
+ * 与ConstantScoreQuery包装过滤器不同，边界栅格中的候选文档不在生成结果时校验，
+ * 而是在迭代到该文档时才校验；与其他条件组成BooleanQuery的MUST子句时，
+ * 被其他条件排除的候选文档不会读取图形
+ * <p>
+ * @author Potato-Cake（potato_cake@163.com）
+ */
+public class SpatialQuery extends Query {
+
+    private final AbstractSpatialFilter filter;
+
+    public SpatialQuery(AbstractSpatialFilter filter) {
+        if (filter == null) {
+            throw new NullPointerException();
+        }
+        this.filter = filter;
+    }
+
+    public AbstractSpatialFilter getFilter() {
+        return filter;
+    }
+
+    @Override
+    public Weight createWeight(IndexSearcher searcher) throws IOException {
+        return new SpatialWeight();
+    }
+
+    @Override
+    public void extractTerms(Set<Term> terms) {
+        // 图形条件不对应具体的词
+    }
+
+    @Override
+    public String toString(String field) {
+        return "SpatialQuery(" + filter + ")" + ToStringUtils.boost(getBoost());
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!super.equals(o)) {
+            return false;
+        }
+        return filter.equals(((SpatialQuery) o).filter);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * super.hashCode() + filter.hashCode();
+    }
+
+    private class SpatialWeight extends Weight {
+
+        private float queryNorm;
+        private float queryWeight;
+
+        @Override
+        public Query getQuery() {
+            return SpatialQuery.this;
+        }
+
+        @Override
+        public float getValueForNormalization() throws IOException {
+            queryWeight = getBoost();
+            return queryWeight * queryWeight;
+        }
+
+        @Override
+        public void normalize(float norm, float topLevelBoost) {
+            queryNorm = norm * topLevelBoost;
+            queryWeight *= queryNorm;
+        }
+
+        @Override
+        public Scorer scorer(AtomicReaderContext context, Bits acceptDocs) throws IOException {
+            DocIdSetIterator iterator = filter.getLazyIterator(context, acceptDocs);
+            if (iterator == null) {
+                return null;
+            }
+            return new SpatialScorer(this, iterator, queryWeight);
+        }
+
+        /**
+         * 只校验该文档，不迭代段中的其他候选文档
+         */
+        @Override
+        public Explanation explain(AtomicReaderContext context, int doc) throws IOException {
+            if (filter.matches(context, context.reader().getLiveDocs(), doc)) {
+                ComplexExplanation result = new ComplexExplanation(true, queryWeight, "SpatialQuery(" + filter
+                        + "), product of:");
+                result.addDetail(new Explanation(getBoost(), "boost"));
+                result.addDetail(new Explanation(queryNorm, "queryNorm"));
+                return result;
+            }
+            return new ComplexExplanation(false, 0.0f, "SpatialQuery(" + filter + ") doesn't match id " + doc);
+        }
+    }
+
+    private static final class SpatialScorer extends Scorer {
+
+        private final DocIdSetIterator iterator;
+        private final float score;
+
+        SpatialScorer(Weight weight, DocIdSetIterator iterator, float score) {
+            super(weight);
+            this.iterator = iterator;
+            this.score = score;
+        }
+
+        @Override
+        public float score() throws IOException {
+            return score;
+        }
+
+        @Override
+        public int freq() throws IOException {
+            return 1;
+        }
+
+        @Override
+        public int docID() {
+            return iterator.docID();
+        }
+
+        @Override
+        public int nextDoc() throws IOException {
+            return iterator.nextDoc();
+        }
+
+        @Override
+        public int advance(int target) throws IOException {
+            return iterator.advance(target);
+        }
+
+        @Override
+        public long cost() {
+            return iterator.cost();
+        }
+    }
+}
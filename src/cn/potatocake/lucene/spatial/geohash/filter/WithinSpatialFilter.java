@@ -1,20 +1,55 @@
 package cn.potatocake.lucene.spatial.geohash.filter;
 
 import cn.potatocake.lucene.spatial.SpatialRelation;
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Envelope;
 import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.prep.PreparedGeometry;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import org.apache.lucene.index.AtomicReaderContext;
 import org.apache.lucene.util.Bits;
 
 /**
- * 被包含过滤器
+ * 被包含过滤器，查找包含查询图形的文档
+ * <p>
+ * 包含查询图形的文档必然与查询图形的每个栅格相交，因此只需在边界栅格中查找候选文档；
+ * 被查询图形包含的栅格只用于排除：文档与其中的栅格仅部分相交时，不可能包含查询图形
  * <p>
  * @author @author Potato-Cake（potato_cake@163.com）
  */
 public class WithinSpatialFilter extends AbstractSpatialFilter {
 
+    private final List<TokenRange> interiorRanges; // 被查询图形包含的栅格
+    private final List<TokenRange> boundaryRanges; // 与查询图形相交的栅格及前缀
+
     public WithinSpatialFilter(Geometry geometry) {
         super(geometry);
+        this.interiorRanges = getRanges(true);
+        this.boundaryRanges = getRanges(false);
+    }
+
+    public WithinSpatialFilter(Geometry geometry, int minCharSize, int maxCharSize) {
+        super(geometry, minCharSize, maxCharSize);
+        this.interiorRanges = getRanges(true);
+        this.boundaryRanges = getRanges(false);
+    }
+
+    public WithinSpatialFilter(PreparedGeometry prepared, Cover cover) {
+        super(prepared, cover);
+        this.interiorRanges = getRanges(true);
+        this.boundaryRanges = getRanges(false);
+    }
+
+    private List<TokenRange> getRanges(boolean interior) {
+        List<TokenRange> list = new ArrayList<>();
+        for (TokenRange range : ranges) {
+            if (interior == (!range.isPrefix() && range.getRel() == SpatialRelation.CONTAINS.getByte())) {
+                list.add(range);
+            }
+        }
+        return list;
     }
 
     @Override
@@ -23,8 +58,84 @@ public class WithinSpatialFilter extends AbstractSpatialFilter {
     }
 
     @Override
-    public Visitor getVisitor(AtomicReaderContext context, Bits acceptDocs, Geometry geometry) throws IOException {
-        throw new UnsupportedOperationException("Not supported yet.");
+    public Visitor getVisitor(AtomicReaderContext context, Bits acceptDocs, final Geometry geometry) throws IOException {
+        return new Visitor(context, acceptDocs, geometry) {
+
+            private final boolean isPuntal = geometry.getDimension() == 0;
+            private final Coordinate[] coordinates = geometry.getCoordinates();
+
+            @Override
+            protected void finish() throws IOException {
+            }
+
+            @Override
+            protected boolean isNeed(int docid) throws IOException {
+                Geometry g = getGeometry(docid);
+                return g != null && prepared.within(g);
+            }
+
+            @Override
+            protected boolean isNeed(Envelope envelope) {
+                return envelope.contains(queryEnvelope);
+            }
+
+            /**
+             * 点只可能包含与其重合的点
+             */
+            @Override
+            protected boolean isNeed(double x, double y) {
+                if (!isPuntal || coordinates.length == 0) {
+                    return false;
+                }
+                for (Coordinate c : coordinates) {
+                    if (c.x != x || c.y != y) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+
+            @Override
+            protected void start() throws IOException {
+                // 先遍历内部栅格排除文档，边界栅格中不再校验这些文档
+                visitRanges(interiorRanges);
+            }
+
+            @Override
+            protected List<TokenRange> getRanges() {
+                return boundaryRanges;
+            }
+
+            @Override
+            protected boolean visit(byte cellRelation, byte relation) throws IOException {
+                if (relation == SpatialRelation.CONTAINS.getByte()) {
+                    // 索引栅格不比查询栅格粗，文档与其部分相交或为点时，必然不包含查询栅格
+                    if (termRelation != SpatialRelation.CONTAINS.getByte()) {
+                        rejectDocs();
+                    }
+                    return true;
+                } else if (relation == SpatialRelation.INTERSECTS.getByte()
+                        || relation == SpatialRelation.WITHIN.getByte()) {
+                    // 点只可能包含点
+                    if (cellRelation == SpatialRelation.WITHIN.getByte() && !isPuntal) {
+                        rejectDocs();
+                    } else {
+                        checkDocs();
+                    }
+                    return true;
+                }
+                return false;
+            }
+
+            @Override
+            protected boolean visitPoint(byte relation) throws IOException {
+                if (!isPuntal) {
+                    return false;
+                }
+                checkPointDocs();
+                return true;
+            }
+        };
     }
 
 }
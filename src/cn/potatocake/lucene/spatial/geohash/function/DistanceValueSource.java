@@ -0,0 +1,100 @@
+package cn.potatocake.lucene.spatial.geohash.function;
+
+import cn.potatocake.lucene.spatial.geohash.GeohashTreeSpatialStrategy;
+import cn.potatocake.lucene.spatial.geohash.utils.DistanceUtils;
+import com.vividsolutions.jts.geom.Point;
+import java.io.IOException;
+import java.util.Map;
+import org.apache.lucene.index.AtomicReader;
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.queries.function.FunctionValues;
+import org.apache.lucene.queries.function.ValueSource;
+import org.apache.lucene.queries.function.docvalues.DoubleDocValues;
+import org.apache.lucene.util.Bits;
+
+/**
+ * 距离值，按半正矢公式计算中心点到文档图形中心点的球面距离
+ * <p>
+ * 文档中心点从DocValues读取，不读取存储字段；没有中心点的文档取最大距离（半个大圆）
+ * <p>
+ * @author Potato-Cake（potato_cake@163.com）
+ */
+public class DistanceValueSource extends ValueSource {
+
+    private final Point center;
+    private final double radius; // 球半径，决定距离单位
+    private final double nullValue;
+    private final double centerLat;
+    private final double centerLon;
+
+    /**
+     * 距离单位为公里
+     * <p>
+     * @param center
+     */
+    public DistanceValueSource(Point center) {
+        this(center, DistanceUtils.EARTH_MEAN_RADIUS_KM);
+    }
+
+    /**
+     * @param center
+     * @param radius 球半径，如DistanceUtils.EARTH_MEAN_RADIUS_MI时距离单位为英里
+     */
+    public DistanceValueSource(Point center, double radius) {
+        this.center = center;
+        this.radius = radius;
+        this.nullValue = Math.PI * radius;
+        this.centerLat = center.getY() * DistanceUtils.DEGREES_TO_RADIANS;
+        this.centerLon = center.getX() * DistanceUtils.DEGREES_TO_RADIANS;
+    }
+
+    @Override
+    @SuppressWarnings("rawtypes")
+    public FunctionValues getValues(Map context, AtomicReaderContext readerContext) throws IOException {
+        AtomicReader reader = readerContext.reader();
+        final NumericDocValues xs = reader.getNumericDocValues(GeohashTreeSpatialStrategy.CENTER_X_FIELD_NAME);
+        final NumericDocValues ys = reader.getNumericDocValues(GeohashTreeSpatialStrategy.CENTER_Y_FIELD_NAME);
+        final Bits docsWithField = reader.getDocsWithField(GeohashTreeSpatialStrategy.CENTER_X_FIELD_NAME);
+        return new DoubleDocValues(this) {
+
+            @Override
+            public double doubleVal(int doc) {
+                if (xs == null || ys == null || !docsWithField.get(doc)) {
+                    return nullValue;
+                }
+                double lon = Double.longBitsToDouble(xs.get(doc)) * DistanceUtils.DEGREES_TO_RADIANS;
+                double lat = Double.longBitsToDouble(ys.get(doc)) * DistanceUtils.DEGREES_TO_RADIANS;
+                return DistanceUtils.distHaversineRAD(centerLat, centerLon, lat, lon) * radius;
+            }
+
+            @Override
+            public boolean exists(int doc) {
+                return docsWithField != null && docsWithField.get(doc);
+            }
+        };
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        DistanceValueSource that = (DistanceValueSource) o;
+        return radius == that.radius && center.equalsExact(that.center);
+    }
+
+    @Override
+    public int hashCode() {
+        long bits = Double.doubleToLongBits(radius);
+        return 31 * center.hashCode() + (int) (bits ^ (bits >>> 32));
+    }
+
+    @Override
+    public String description() {
+        return "distance(" + center.getX() + "," + center.getY() + ")";
+    }
+}
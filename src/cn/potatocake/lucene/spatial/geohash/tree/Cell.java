@@ -2,8 +2,7 @@ package cn.potatocake.lucene.spatial.geohash.tree;
 
 import cn.potatocake.lucene.spatial.SpatialRelation;
 import cn.potatocake.lucene.spatial.geohash.utils.GeoHash;
-import java.nio.charset.StandardCharsets;
-import java.util.Arrays;
+import cn.potatocake.lucene.spatial.geohash.utils.GeoHashUtils;
 import org.apache.lucene.util.BytesRef;
 
 /**
@@ -13,10 +12,10 @@ import org.apache.lucene.util.BytesRef;
  */
 public class Cell {
 
-    private String token; // geohash值
-    private byte[] bytes;
+    private String token; // geohash值，按需生成
     protected byte shapeRel; // 栅格与图形关系
     private long bits;
+    private int charSize;
 
     public Cell() {
     }
@@ -26,6 +25,9 @@ public class Cell {
     }
 
     public String getToken() {
+        if (token == null) {
+            token = GeoHashUtils.toBase32(bits, charSize);
+        }
         return token;
     }
 
@@ -33,25 +35,57 @@ public class Cell {
         return bits;
     }
 
+    public int getCharSize() {
+        return charSize;
+    }
+
     public byte[] getBytes() {
-        if (bytes == null) {
-            bytes = token.getBytes(StandardCharsets.UTF_8);
-        }
+        byte[] bytes = new byte[charSize];
+        toBytes(bytes, 0);
         return bytes;
     }
 
+    /**
+     * 将geohash值写入指定数组，不创建新对象
+     * <p>
+     * @param buf
+     * @param offset
+     *               <p>
+     * @return 写入的字节数
+     */
+    public int toBytes(byte[] buf, int offset) {
+        return GeoHashUtils.toBase32(bits, charSize, buf, offset);
+    }
+
+    /**
+     * 将geohash值写入指定字符数组，不创建新对象
+     * <p>
+     * @param buf
+     * @param offset
+     *               <p>
+     * @return 写入的字符数
+     */
+    public int toChars(char[] buf, int offset) {
+        return GeoHashUtils.toBase32(bits, charSize, buf, offset);
+    }
+
     public Cell reset(GeoHash geoHash, SpatialRelation _shapeRel) {
-        token = geoHash.toBase32();
-        bits = geoHash.longValue();
+        return reset(geoHash.longValue(), geoHash.getCharacterPrecision(), _shapeRel);
+    }
+
+    public Cell reset(long _bits, int _charSize, SpatialRelation _shapeRel) {
+        bits = _bits;
+        charSize = _charSize;
         shapeRel = _shapeRel.getByte();
-        bytes = null;
+        token = null;
         return this;
     }
 
     public Cell reset(BytesRef bytesRef) {
-        this.bytes = Arrays.copyOf(bytesRef.bytes, bytesRef.length - 1);
+        charSize = bytesRef.length - 1;
+        bits = GeoHashUtils.fromBase32(bytesRef.bytes, bytesRef.offset, charSize);
+        shapeRel = bytesRef.bytes[bytesRef.offset + charSize];
         token = null;
-        shapeRel = bytesRef.bytes[bytesRef.length - 1];
         return this;
     }
 
@@ -1,20 +1,23 @@
 package cn.potatocake.lucene.spatial.geohash.tree;
 
 import cn.potatocake.lucene.spatial.SpatialRelation;
+import cn.potatocake.lucene.spatial.geohash.utils.Circle;
 import cn.potatocake.lucene.spatial.geohash.utils.GeoHash;
+import cn.potatocake.lucene.spatial.geohash.utils.GeoHashUtils;
 import cn.potatocake.lucene.spatial.geohash.utils.GeometryMaker;
 import com.vividsolutions.jts.geom.Envelope;
 import com.vividsolutions.jts.geom.Geometry;
-import com.vividsolutions.jts.geom.LineString;
 import com.vividsolutions.jts.geom.Point;
-import java.util.HashMap;
+import com.vividsolutions.jts.geom.prep.PreparedGeometry;
+import com.vividsolutions.jts.geom.prep.PreparedGeometryFactory;
 import java.util.Iterator;
-import java.util.Map;
 import java.util.NoSuchElementException;
 
 /**
  * 图形栅格类，可根据图形生成图形栅格列表及关系
  * <p>
+ * 栅格自顶向下按32叉树递归划分，只有与图形相交的栅格才继续细分，输出顺序即geohash字典序
+ * <p>
  * @author @author Potato-Cake（potato_cake@163.com）
  */
 public class GeometryCell implements Iterator<Cell> {
@@ -22,104 +25,122 @@ public class GeometryCell implements Iterator<Cell> {
     public static final int POINT_CHAR_SIZE = 12;
     public static final int MAX_CHAR_SIZE = 4;
     public static final int MIN_CHAR_SIZE = 4;
+    private static final int CHILD_SIZE = 32;
     private final boolean isPoint;
     private final Envelope boundingBox;
     private final Geometry geometry;
-    private final GeoHash bottomLeft;
-    private final GeoHash topRight;
+    private final PreparedGeometry prepared; // 预处理图形，栅格判断时复用其空间索引
+    private final Circle circle; // 圆形，不为空时按球面距离判断栅格关系，geometry、prepared为空
+    private final int minCharSize;
+    private final int maxCharSize;
     private final Cell cell;
-    private GeoHash current;
-    private SpatialRelation relation;
-    private boolean hasNextPoint;
-    private GeometryCell subCell;
-    private boolean isNextSub;
-    private final int currentCharSize;
-    private long min;
-    private long max;
-    private final Map<String, Boolean> map;
+    private final double[] bounds = new double[4]; // 当前栅格范围
+    // 深度优先遍历栈，下标为父栅格的字符数
+    private final long[] parents;
+    private final int[] children;
+    private final boolean[] contained; // 父栅格已被图形包含，子栅格无需再判断
+    private int depth;
+    private boolean hasNextCell;
+    private long nextBits;
+    private int nextCharSize;
+    private SpatialRelation nextRelation;
 
     public static GeometryCell getGeometryCell(Geometry geometry) {
-        return new GeometryCell(geometry, MIN_CHAR_SIZE);
+        if (geometry == null) {
+            throw new NullPointerException();
+        }
+        return getGeometryCell(PreparedGeometryFactory.prepare(geometry));
     }
 
-    private GeometryCell(Geometry geometry, int charSize) {
-        if (geometry == null) {
+    /**
+     * 根据已预处理的图形生成栅格，同一图形多次生成栅格时可避免重复构建空间索引
+     * <p>
+     * @param prepared
+     *                 <p>
+     * @return
+     */
+    public static GeometryCell getGeometryCell(PreparedGeometry prepared) {
+        if (prepared == null) {
             throw new NullPointerException();
         }
-        this.geometry = geometry;
-        this.cell = new Cell();
-        this.isPoint = (geometry instanceof Point);
-        if (isPoint) {
-            currentCharSize = POINT_CHAR_SIZE;
-            Point point = (Point) geometry;
-            this.current = GeoHash.getGeoHash(point.getY(), point.getX(), currentCharSize);
-            hasNextPoint = true;
-            this.boundingBox = null;
-            this.bottomLeft = null;
-            this.topRight = null;
-            min = current.longValue();
-            max = min;
-            map = null;
-        } else {
-            if (geometry instanceof LineString) {
-                currentCharSize = MAX_CHAR_SIZE;
-                map = null;
-            } else {
-                currentCharSize = charSize;
-                map = new HashMap<>();
-            }
-            this.boundingBox = geometry.getEnvelopeInternal();
-            this.bottomLeft = GeoHash.getGeoHash(boundingBox.getMinY(), boundingBox.getMinX(), currentCharSize);
-            this.topRight = GeoHash.getGeoHash(boundingBox.getMaxY(), boundingBox.getMaxX(), currentCharSize);
-            this.current = bottomLeft;
-            min = bottomLeft.longValue();
-            max = topRight.longValue();
-            if (!check()) {
-                getNext();
-            }
+        return new GeometryCell(prepared, MIN_CHAR_SIZE,
+                prepared.getGeometry() instanceof Point ? POINT_CHAR_SIZE : MAX_CHAR_SIZE);
+    }
+
+    /**
+     * 按指定精度生成栅格，被图形包含的栅格最粗为minCharSize，边界栅格为maxCharSize，点直接使用maxCharSize
+     * <p>
+     * @param prepared
+     * @param minCharSize
+     * @param maxCharSize
+     *                    <p>
+     * @return
+     */
+    public static GeometryCell getGeometryCell(PreparedGeometry prepared, int minCharSize, int maxCharSize) {
+        if (maxCharSize < 1 || maxCharSize > GeoHashUtils.MAX_CHAR_SIZE || minCharSize < 1) {
+            throw new IllegalArgumentException("char size must be between 1 and " + GeoHashUtils.MAX_CHAR_SIZE);
         }
+        return new GeometryCell(prepared, Math.min(minCharSize, maxCharSize), maxCharSize);
     }
 
-    private GeometryCell(Geometry geometry, Envelope _boundingBox, int charSize, Map<String, Boolean> m) {
-        if (geometry == null) {
+    /**
+     * 按指定精度生成圆形的栅格，栅格关系由栅格到圆心的最近、最远球面距离判断，不生成多边形
+     * <p>
+     * @param circle
+     * @param minCharSize
+     * @param maxCharSize
+     *                    <p>
+     * @return
+     */
+    public static GeometryCell getGeometryCell(Circle circle, int minCharSize, int maxCharSize) {
+        if (maxCharSize < 1 || maxCharSize > GeoHashUtils.MAX_CHAR_SIZE || minCharSize < 1) {
+            throw new IllegalArgumentException("char size must be between 1 and " + GeoHashUtils.MAX_CHAR_SIZE);
+        }
+        return new GeometryCell(circle, Math.min(minCharSize, maxCharSize), maxCharSize);
+    }
+
+    private GeometryCell(PreparedGeometry prepared, int minCharSize, int maxCharSize) {
+        if (prepared == null) {
             throw new NullPointerException();
         }
-        this.geometry = geometry;
-        this.cell = new Cell();
+        this.prepared = prepared;
+        this.geometry = prepared.getGeometry();
+        this.circle = null;
         this.isPoint = (geometry instanceof Point);
-        if (isPoint) {
-            currentCharSize = POINT_CHAR_SIZE;
-            Point point = (Point) geometry;
-            this.current = GeoHash.getGeoHash(point.getY(), point.getX(), currentCharSize);
-            hasNextPoint = true;
-            this.boundingBox = null;
-            this.bottomLeft = null;
-            this.topRight = null;
-            map = m;
-        } else {
-            if (geometry instanceof LineString) {
-                currentCharSize = MAX_CHAR_SIZE;
-                map = m;
-            } else {
-                currentCharSize = charSize;
-                map = m;
-            }
-            this.boundingBox = _boundingBox;
-            this.bottomLeft = GeoHash.getGeoHash(boundingBox.getMinY(), boundingBox.getMinX(), currentCharSize);
-            this.topRight = GeoHash.getGeoHash(boundingBox.getMaxY(), boundingBox.getMaxX(), currentCharSize);
-            this.current = bottomLeft;
-            if (!check()) {
-                getNext();
-            }
+        this.boundingBox = isPoint ? null : geometry.getEnvelopeInternal();
+        this.cell = new Cell();
+        this.minCharSize = minCharSize;
+        this.maxCharSize = maxCharSize;
+        this.parents = new long[maxCharSize + 1];
+        this.children = new int[maxCharSize + 1];
+        this.contained = new boolean[maxCharSize + 1];
+        remain();
+    }
+
+    private GeometryCell(Circle circle, int minCharSize, int maxCharSize) {
+        if (circle == null) {
+            throw new NullPointerException();
         }
+        this.prepared = null;
+        this.geometry = null;
+        this.circle = circle;
+        this.isPoint = false;
+        this.boundingBox = circle.getBoundingBox();
+        this.cell = new Cell();
+        this.minCharSize = minCharSize;
+        this.maxCharSize = maxCharSize;
+        this.parents = new long[maxCharSize + 1];
+        this.children = new int[maxCharSize + 1];
+        this.contained = new boolean[maxCharSize + 1];
+        remain();
     }
 
     public long getMin() {
-        return min;
+        return getBottomLeft().longValue();
     }
 
     public long getMax() {
-        return max;
+        return getTopRight().longValue();
     }
 
     public Envelope getBoundingBox() {
@@ -127,23 +148,43 @@ public class GeometryCell implements Iterator<Cell> {
     }
 
     public GeoHash getBottomLeft() {
-        return bottomLeft;
+        if (isPoint) {
+            Point point = (Point) geometry;
+            return GeoHash.getGeoHash(point.getY(), point.getX(), maxCharSize);
+        }
+        return GeoHash.getGeoHash(boundingBox.getMinY(), boundingBox.getMinX(), maxCharSize);
     }
 
     public GeoHash getTopRight() {
-        return topRight;
+        if (isPoint) {
+            return getBottomLeft();
+        }
+        return GeoHash.getGeoHash(boundingBox.getMaxY(), boundingBox.getMaxX(), maxCharSize);
+    }
+
+    public int getMinCharSize() {
+        return minCharSize;
+    }
+
+    public int getMaxCharSize() {
+        return maxCharSize;
     }
 
     public Geometry getGeometry() {
         return geometry;
     }
 
+    public PreparedGeometry getPreparedGeometry() {
+        return prepared;
+    }
+
+    public Circle getCircle() {
+        return circle;
+    }
+
     @Override
     public boolean hasNext() {
-        if (isPoint) {
-            return hasNextPoint;
-        }
-        return checkSubCell() || current.compareTo(topRight) <= 0;
+        return hasNextCell;
     }
 
     @Override
@@ -151,79 +192,61 @@ public class GeometryCell implements Iterator<Cell> {
         if (!hasNext()) {
             throw new NoSuchElementException();
         }
+        cell.reset(nextBits, nextCharSize, nextRelation);
         if (isPoint) {
-            hasNextPoint = false;
-            return cell.reset(current, SpatialRelation.WITHIN);
-        }
-        if (checkSubCell()) {
-            return subCell.next();
+            hasNextCell = false;
+        } else {
+            getNext();
         }
-        cell.reset(current, relation);
-        getNext();
         return cell;
     }
 
+    /**
+     * 深度优先查找下一个需要输出的栅格，与图形脱离的栅格及其子栅格直接跳过
+     */
     private void getNext() {
-        while (current.compareTo(topRight) <= 0) {
-            current = current.next();
-            if (check()) {
-                if (map != null) {
-                    map.put(current.toBase32(), true);
-                }
-                break;
+        while (depth >= 0) {
+            if (children[depth] == CHILD_SIZE) {
+                depth--;
+                continue;
             }
-        }
-    }
-
-    private boolean checkSubCell() {
-        if (subCell != null) {
-            if (subCell.hasNext()) {
-                return true;
-            } else {
-                if (isNextSub) {
-                    subCell = new GeometryCell(geometry, current.getBoundingBox(), currentCharSize + 1, map);
-                    isNextSub = false;
-                    getNext();
-                    return subCell.hasNext();
-                } else {
-                    subCell = null;
-                    return false;
-                }
+            int charSize = depth + 1;
+            long bits = parents[depth] | (((long) children[depth]++) << (64 - GeoHashUtils.BASE32_BITS * charSize));
+            GeoHashUtils.decode(bits, charSize, bounds);
+            if (bounds[0] > boundingBox.getMaxX() || bounds[1] < boundingBox.getMinX()
+                    || bounds[2] > boundingBox.getMaxY() || bounds[3] < boundingBox.getMinY()) {
+                continue;
+            }
+            SpatialRelation relation = contained[depth] ? SpatialRelation.CONTAINS : check();
+            if (relation == SpatialRelation.DISJOINT) {
+                continue;
+            }
+            if (relation == SpatialRelation.CONTAINS ? charSize >= minCharSize : charSize >= maxCharSize) {
+                hasNextCell = true;
+                nextBits = bits;
+                nextCharSize = charSize;
+                nextRelation = relation;
+                return;
             }
+            depth = charSize;
+            parents[depth] = bits;
+            children[depth] = 0;
+            contained[depth] = relation == SpatialRelation.CONTAINS;
         }
-        return false;
+        hasNextCell = false;
     }
 
-    private boolean isNeed() {
-        return relation == SpatialRelation.CONTAINS || (currentCharSize == MAX_CHAR_SIZE && relation == SpatialRelation.INTERSECTS);
-    }
-
-    private boolean check() {
-        if (map != null) {
-            if (map.containsKey(current.toBase32())) {
-                return false;
-            }
+    private SpatialRelation check() {
+        if (circle != null) {
+            return circle.relate(bounds[0], bounds[1], bounds[2], bounds[3]);
         }
-        Geometry g = GeometryMaker.toGeometry(current.getBoundingBox());
-        if (geometry.contains(g)) {
-            relation = SpatialRelation.CONTAINS;
-        } else if (geometry.intersects(g)) {
-            relation = SpatialRelation.INTERSECTS;
-            if (currentCharSize < MAX_CHAR_SIZE) {
-                if (subCell != null) {
-                    isNextSub = true;
-                    return true;
-                }
-                subCell = new GeometryCell(geometry, current.getBoundingBox(), currentCharSize + 1, map);
-                getNext();
-                return true;
-            }
-        } else if (geometry.within(g)) {
-            relation = SpatialRelation.WITHIN;
-        } else {
-            relation = SpatialRelation.DISJOINT;
+        Geometry g = GeometryMaker.toGeometry(new Envelope(bounds[0], bounds[1], bounds[2], bounds[3]));
+        if (prepared.contains(g)) {
+            return SpatialRelation.CONTAINS;
+        } else if (prepared.intersects(g)) {
+            return SpatialRelation.INTERSECTS;
         }
-        return isNeed();
+        return SpatialRelation.DISJOINT;
     }
 
     @Override
@@ -233,14 +256,19 @@ public class GeometryCell implements Iterator<Cell> {
 
     public void remain() {
         if (isPoint) {
-            hasNextPoint = true;
+            Point point = (Point) geometry;
+            hasNextCell = true;
+            nextBits = GeoHashUtils.encode(point.getY(), point.getX(), maxCharSize);
+            nextCharSize = maxCharSize;
+            nextRelation = SpatialRelation.WITHIN;
+        } else if (boundingBox.isNull()) {
+            hasNextCell = false;
         } else {
-            current = bottomLeft;
-            subCell = null;
-            relation = null;
-            if (map != null) {
-                map.clear();
-            }
+            depth = 0;
+            parents[0] = 0;
+            children[0] = 0;
+            contained[0] = false;
+            getNext();
         }
     }
 }
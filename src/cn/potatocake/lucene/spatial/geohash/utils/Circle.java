@@ -0,0 +1,276 @@
+package cn.potatocake.lucene.spatial.geohash.utils;
+
+import cn.potatocake.lucene.spatial.SpatialRelation;
+import com.vividsolutions.jts.geom.CoordinateSequence;
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.LineString;
+import com.vividsolutions.jts.geom.Point;
+import com.vividsolutions.jts.geom.Polygon;
+
+/**
+ * 球面上的圆：中心点及半径（公里），不生成多边形，栅格及文档均按球面距离判断
+ * <p>
+ * 经纬度矩形到圆心的最近、最远距离可直接求出：同一纬线上距离随经度差单调增大；
+ * 同一经线上距离至多有一个极值，经度差小于90度时为极小值，大于90度时为极大值
+ * <p>
+ * @author Potato-Cake（potato_cake@163.com）
+ */
+public class Circle {
+
+    private final double x;
+    private final double y;
+    private final double radiusKM;
+    private final Envelope boundingBox;
+
+    /**
+     * @param x        中心点经度
+     * @param y        中心点纬度
+     * @param radiusKM 半径（公里）
+     */
+    public Circle(double x, double y, double radiusKM) {
+        if (!(x >= -180 && x <= 180 && y >= -90 && y <= 90)) {
+            throw new IllegalArgumentException("Invalid center: " + x + ", " + y);
+        }
+        if (!(radiusKM >= 0) || Double.isInfinite(radiusKM)) {
+            throw new IllegalArgumentException("Invalid radius: " + radiusKM);
+        }
+        this.x = x;
+        this.y = y;
+        this.radiusKM = radiusKM;
+        this.boundingBox = computeBoundingBox();
+    }
+
+    public double getX() {
+        return x;
+    }
+
+    public double getY() {
+        return y;
+    }
+
+    public double getRadiusKM() {
+        return radiusKM;
+    }
+
+    public Point getCenter() {
+        return GeometryMaker.makePoint(x, y);
+    }
+
+    /**
+     * 外包矩形，圆跨越180度经线或包含极点时经度取全部范围
+     */
+    public Envelope getBoundingBox() {
+        return boundingBox;
+    }
+
+    private Envelope computeBoundingBox() {
+        double d = radiusKM / DistanceUtils.EARTH_MEAN_RADIUS_KM;
+        double lat = y * DistanceUtils.DEGREES_TO_RADIANS;
+        double minLat = lat - d;
+        double maxLat = lat + d;
+        if (minLat <= -Math.PI / 2 || maxLat >= Math.PI / 2) {
+            return new Envelope(-180, 180, Math.max(minLat, -Math.PI / 2) * DistanceUtils.RADIANS_TO_DEGREES,
+                    Math.min(maxLat, Math.PI / 2) * DistanceUtils.RADIANS_TO_DEGREES);
+        }
+        double dLon = Math.asin(Math.min(1, Math.sin(d) / Math.cos(lat))) * DistanceUtils.RADIANS_TO_DEGREES;
+        double minX = x - dLon;
+        double maxX = x + dLon;
+        if (minX < -180 || maxX > 180) {
+            minX = -180;
+            maxX = 180;
+        }
+        return new Envelope(minX, maxX, minLat * DistanceUtils.RADIANS_TO_DEGREES, maxLat * DistanceUtils.RADIANS_TO_DEGREES);
+    }
+
+    /**
+     * 圆心到指定点的球面距离（公里）
+     */
+    public double distanceKM(double px, double py) {
+        return DistanceUtils.distanceKM(x, y, px, py);
+    }
+
+    public boolean contains(double px, double py) {
+        return distanceKM(px, py) <= radiusKM;
+    }
+
+    /**
+     * 圆心到经纬度矩形的最近球面距离（公里），圆心在矩形内时为0
+     */
+    public double minDistanceKM(double minX, double maxX, double minY, double maxY) {
+        if (x >= minX && x <= maxX) {
+            if (y < minY) {
+                return (minY - y) * DistanceUtils.DEG_TO_KM;
+            } else if (y > maxY) {
+                return (y - maxY) * DistanceUtils.DEG_TO_KM;
+            }
+            return 0;
+        }
+        // 最近点在经度差较小的一条经线边上
+        double diffMin = lonDiff(minX);
+        double diffMax = lonDiff(maxX);
+        double edgeX = diffMin < diffMax ? minX : maxX;
+        double dLon = Math.min(diffMin, diffMax) * DistanceUtils.DEGREES_TO_RADIANS;
+        if (dLon < Math.PI / 2) {
+            // 经线所在大圆上距圆心最近的纬度，限制在边的范围内
+            double lat = Math.atan(Math.tan(y * DistanceUtils.DEGREES_TO_RADIANS) / Math.cos(dLon))
+                    * DistanceUtils.RADIANS_TO_DEGREES;
+            return distanceKM(edgeX, Math.max(minY, Math.min(maxY, lat)));
+        }
+        return Math.min(distanceKM(edgeX, minY), distanceKM(edgeX, maxY));
+    }
+
+    /**
+     * 圆心到经纬度矩形的最远球面距离（公里）
+     */
+    public double maxDistanceKM(double minX, double maxX, double minY, double maxY) {
+        double max = Math.max(Math.max(distanceKM(minX, minY), distanceKM(minX, maxY)),
+                Math.max(distanceKM(maxX, minY), distanceKM(maxX, maxY)));
+        double antipodeX = x > 0 ? x - 180 : x + 180;
+        if (antipodeX >= minX && antipodeX <= maxX) {
+            if (-y >= minY && -y <= maxY) {
+                return Math.PI * DistanceUtils.EARTH_MEAN_RADIUS_KM;
+            }
+            max = Math.max(max, Math.max(distanceKM(antipodeX, minY), distanceKM(antipodeX, maxY)));
+        }
+        // 经度差超过90度的经线边上距离先增大后减小，极大值可能在边的中间
+        max = Math.max(max, maxDistanceOnMeridian(minX, minY, maxY));
+        return Math.max(max, maxDistanceOnMeridian(maxX, minY, maxY));
+    }
+
+    private double maxDistanceOnMeridian(double lon, double minY, double maxY) {
+        double cos = Math.cos(lonDiff(lon) * DistanceUtils.DEGREES_TO_RADIANS);
+        if (cos >= 0) {
+            return 0;
+        }
+        double lat = Math.atan(Math.tan(y * DistanceUtils.DEGREES_TO_RADIANS) / cos) * DistanceUtils.RADIANS_TO_DEGREES;
+        return lat > minY && lat < maxY ? distanceKM(lon, lat) : 0;
+    }
+
+    /**
+     * @return 经度差的绝对值，范围[0, 180]
+     */
+    private double lonDiff(double lon) {
+        double diff = Math.abs(lon - x);
+        return diff > 180 ? 360 - diff : diff;
+    }
+
+    /**
+     * 圆与经纬度矩形的关系
+     * <p>
+     * @return 圆包含矩形时为CONTAINS，不相交时为DISJOINT，否则为INTERSECTS
+     */
+    public SpatialRelation relate(double minX, double maxX, double minY, double maxY) {
+        if (minDistanceKM(minX, maxX, minY, maxY) > radiusKM) {
+            return SpatialRelation.DISJOINT;
+        }
+        if (maxDistanceKM(minX, maxX, minY, maxY) <= radiusKM) {
+            return SpatialRelation.CONTAINS;
+        }
+        return SpatialRelation.INTERSECTS;
+    }
+
+    public boolean intersects(Envelope envelope) {
+        return !envelope.isNull()
+                && minDistanceKM(envelope.getMinX(), envelope.getMaxX(), envelope.getMinY(), envelope.getMaxY()) <= radiusKM;
+    }
+
+    /**
+     * 图形是否与圆相交：点直接按半正矢公式计算距离；其他图形先比较外包矩形，
+     * 再按DistanceUtils.segmentDistanceKM求各线段到圆心的距离，跨越180度经线时线段按圆心经度平移；面还需判断是否包含圆心
+     * <p>
+     * @param shape
+     *              <p>
+     * @return
+     */
+    public boolean intersects(Geometry shape) {
+        if (shape.isEmpty()) {
+            return false;
+        }
+        if (shape instanceof Point) {
+            Point p = (Point) shape;
+            return contains(p.getX(), p.getY());
+        }
+        Envelope envelope = shape.getEnvelopeInternal();
+        if (!intersects(envelope)) {
+            return false;
+        }
+        if (maxDistanceKM(envelope.getMinX(), envelope.getMaxX(), envelope.getMinY(), envelope.getMaxY()) <= radiusKM) {
+            return true;
+        }
+        return intersectsComponent(shape, DistanceUtils.getLonScale(y));
+    }
+
+    private boolean intersectsComponent(Geometry shape, double scale) {
+        if (shape instanceof Point) {
+            Point p = (Point) shape;
+            return !p.isEmpty() && contains(p.getX(), p.getY());
+        } else if (shape instanceof LineString) {
+            return intersectsLine(((LineString) shape).getCoordinateSequence(), scale);
+        } else if (shape instanceof Polygon) {
+            Polygon polygon = (Polygon) shape;
+            if (polygon.isEmpty()) {
+                return false;
+            }
+            if (intersectsLine(polygon.getExteriorRing().getCoordinateSequence(), scale)) {
+                return true;
+            }
+            for (int i = 0; i < polygon.getNumInteriorRing(); i++) {
+                if (intersectsLine(polygon.getInteriorRingN(i).getCoordinateSequence(), scale)) {
+                    return true;
+                }
+            }
+            // 边界均在圆外时，只有圆心在面内才相交
+            return DistanceUtils.contains(polygon, x, y);
+        }
+        for (int i = 0; i < shape.getNumGeometries(); i++) {
+            if (intersectsComponent(shape.getGeometryN(i), scale)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 折线上是否有点在圆内，找到一条距离不超过半径的线段即返回
+     */
+    private boolean intersectsLine(CoordinateSequence points, double scale) {
+        int size = points.size();
+        if (size == 1) {
+            return contains(points.getX(0), points.getY(0));
+        }
+        for (int i = 1; i < size; i++) {
+            if (DistanceUtils.segmentDistanceKM(x, y, scale, points.getX(i - 1), points.getY(i - 1),
+                    points.getX(i), points.getY(i)) <= radiusKM) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof Circle)) {
+            return false;
+        }
+        Circle that = (Circle) o;
+        return Double.compare(x, that.x) == 0 && Double.compare(y, that.y) == 0
+                && Double.compare(radiusKM, that.radiusKM) == 0;
+    }
+
+    @Override
+    public int hashCode() {
+        long bits = Double.doubleToLongBits(x);
+        bits = 31 * bits + Double.doubleToLongBits(y);
+        bits = 31 * bits + Double.doubleToLongBits(radiusKM);
+        return (int) (bits ^ (bits >>> 32));
+    }
+
+    @Override
+    public String toString() {
+        return "CIRCLE(" + x + " " + y + ", " + radiusKM + "km)";
+    }
+}
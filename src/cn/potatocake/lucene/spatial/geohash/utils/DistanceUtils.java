@@ -1,5 +1,14 @@
 package cn.potatocake.lucene.spatial.geohash.utils;
 
+import com.vividsolutions.jts.algorithm.RayCrossingCounter;
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.CoordinateSequence;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.LineString;
+import com.vividsolutions.jts.geom.Location;
+import com.vividsolutions.jts.geom.Point;
+import com.vividsolutions.jts.geom.Polygon;
+
 /**
  * 距离计算工具类
  * <p>
@@ -21,4 +30,172 @@ public class DistanceUtils {
 
     public static final double EARTH_MEAN_RADIUS_MI = EARTH_MEAN_RADIUS_KM * KM_TO_MILES;
     public static final double EARTH_EQUATORIAL_RADIUS_MI = EARTH_EQUATORIAL_RADIUS_KM * KM_TO_MILES;
+
+    /**
+     * 半正矢公式计算球面上两点间的距离
+     * <p>
+     * @param lat1 纬度（弧度）
+     * @param lon1 经度（弧度）
+     * @param lat2 纬度（弧度）
+     * @param lon2 经度（弧度）
+     *             <p>
+     * @return 两点间的圆心角（弧度），乘以球半径即为距离
+     */
+    public static double distHaversineRAD(double lat1, double lon1, double lat2, double lon2) {
+        if (lat1 == lat2 && lon1 == lon2) {
+            return 0.0;
+        }
+        double hsinX = Math.sin((lon1 - lon2) * 0.5);
+        double hsinY = Math.sin((lat1 - lat2) * 0.5);
+        double h = hsinY * hsinY + (Math.cos(lat1) * Math.cos(lat2) * hsinX * hsinX);
+        if (h > 1) {
+            h = 1;
+        }
+        return 2 * Math.atan2(Math.sqrt(h), Math.sqrt(1 - h));
+    }
+
+    /**
+     * 计算球面上两点间的距离（公里）
+     * <p>
+     * @param x1 经度（度）
+     * @param y1 纬度（度）
+     * @param x2 经度（度）
+     * @param y2 纬度（度）
+     *           <p>
+     * @return
+     */
+    public static double distanceKM(double x1, double y1, double x2, double y2) {
+        return distHaversineRAD(y1 * DEGREES_TO_RADIANS, x1 * DEGREES_TO_RADIANS,
+                y2 * DEGREES_TO_RADIANS, x2 * DEGREES_TO_RADIANS) * EARTH_MEAN_RADIUS_KM;
+    }
+
+    /**
+     * 以某点纬度缩放经度的系数，用于在经纬度平面上近似求线段上距该点最近的点
+     * <p>
+     * @param y 纬度（度）
+     *          <p>
+     * @return
+     */
+    public static double getLonScale(double y) {
+        return Math.max(Math.cos(y * DEGREES_TO_RADIANS), 1e-9);
+    }
+
+    /**
+     * 点到线段的球面距离（公里）
+     * <p>
+     * 线段经度先整体平移±360度，使其与点的经度差不超过180度，跨越180度经线两侧的点与线段按实际距离计算；
+     * 再在以点纬度缩放经度的平面上求线段上距该点最近的点，按半正矢公式计算两点距离
+     * <p>
+     * @param x     经度（度）
+     * @param y     纬度（度）
+     * @param scale 经度缩放系数，见getLonScale(y)
+     * @param ax    线段起点经度（度）
+     * @param ay    线段起点纬度（度）
+     * @param bx    线段终点经度（度）
+     * @param by    线段终点纬度（度）
+     *              <p>
+     * @return
+     */
+    public static double segmentDistanceKM(double x, double y, double scale, double ax, double ay, double bx, double by) {
+        double shift = 0;
+        if (Math.min(ax, bx) - x > 180) {
+            shift = -360;
+        } else if (x - Math.max(ax, bx) > 180) {
+            shift = 360;
+        }
+        ax += shift;
+        bx += shift;
+        double dx = (bx - ax) * scale, dy = by - ay;
+        double len = dx * dx + dy * dy;
+        double t = len == 0 ? 0 : ((x - ax) * scale * dx + (y - ay) * dy) / len;
+        t = Math.max(0, Math.min(1, t));
+        return distanceKM(x, y, ax + t * (bx - ax), ay + t * dy);
+    }
+
+    /**
+     * 点到折线的球面距离（公里），逐段按segmentDistanceKM计算
+     * <p>
+     * @param x      经度（度）
+     * @param y      纬度（度）
+     * @param scale  经度缩放系数，见getLonScale(y)
+     * @param points
+     *               <p>
+     * @return 折线为空时返回Double.POSITIVE_INFINITY
+     */
+    public static double distanceKM(double x, double y, double scale, CoordinateSequence points) {
+        int size = points.size();
+        if (size == 0) {
+            return Double.POSITIVE_INFINITY;
+        } else if (size == 1) {
+            return distanceKM(x, y, points.getX(0), points.getY(0));
+        }
+        double min = Double.POSITIVE_INFINITY;
+        for (int i = 1; i < size; i++) {
+            min = Math.min(min, segmentDistanceKM(x, y, scale, points.getX(i - 1), points.getY(i - 1),
+                    points.getX(i), points.getY(i)));
+        }
+        return min;
+    }
+
+    /**
+     * 点是否在面内或面的边界上
+     */
+    public static boolean contains(Polygon polygon, double x, double y) {
+        if (polygon.isEmpty()) {
+            return false;
+        }
+        Coordinate c = new Coordinate(x, y);
+        if (RayCrossingCounter.locatePointInRing(c, polygon.getExteriorRing().getCoordinateSequence()) == Location.EXTERIOR) {
+            return false;
+        }
+        for (int i = 0; i < polygon.getNumInteriorRing(); i++) {
+            if (RayCrossingCounter.locatePointInRing(c, polygon.getInteriorRingN(i).getCoordinateSequence())
+                    == Location.INTERIOR) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 计算点到图形的距离（公里），点在面内时为0
+     * <p>
+     * 各线段按segmentDistanceKM计算，跨越180度经线两侧时按实际距离计算；
+     * 线段上的最近点在以点纬度缩放经度的平面上求得，线段很长且纬度较高时略大于真实的最小球面距离
+     * <p>
+     * @param point
+     * @param shape
+     *              <p>
+     * @return 图形为空时返回Double.POSITIVE_INFINITY
+     */
+    public static double distanceKM(Point point, Geometry shape) {
+        return distanceKM(point.getX(), point.getY(), getLonScale(point.getY()), shape);
+    }
+
+    private static double distanceKM(double x, double y, double scale, Geometry shape) {
+        if (shape.isEmpty()) {
+            return Double.POSITIVE_INFINITY;
+        }
+        if (shape instanceof Point) {
+            Point p = (Point) shape;
+            return distanceKM(x, y, p.getX(), p.getY());
+        } else if (shape instanceof LineString) {
+            return distanceKM(x, y, scale, ((LineString) shape).getCoordinateSequence());
+        } else if (shape instanceof Polygon) {
+            Polygon polygon = (Polygon) shape;
+            if (contains(polygon, x, y)) {
+                return 0;
+            }
+            double min = distanceKM(x, y, scale, polygon.getExteriorRing().getCoordinateSequence());
+            for (int i = 0; i < polygon.getNumInteriorRing(); i++) {
+                min = Math.min(min, distanceKM(x, y, scale, polygon.getInteriorRingN(i).getCoordinateSequence()));
+            }
+            return min;
+        }
+        double min = Double.POSITIVE_INFINITY;
+        for (int i = 0; i < shape.getNumGeometries() && min > 0; i++) {
+            min = Math.min(min, distanceKM(x, y, scale, shape.getGeometryN(i)));
+        }
+        return min;
+    }
 }
@@ -2,7 +2,6 @@ package cn.potatocake.lucene.spatial.geohash.utils;
 
 import com.vividsolutions.jts.geom.Coordinate;
 import com.vividsolutions.jts.geom.Envelope;
-import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -13,9 +12,6 @@ import java.util.Map;
  */
 public final class GeoHash implements Comparable<GeoHash> {
 
-    private static final double[][] WORLD = {{-90.0, 90.0}, {-180.0, 180.0}};
-//    private static final double[][] CHINA = {{0.0, 60.0}, {70.0, 140.0}};
-    private static final int[] BITS = {16, 8, 4, 2, 1};
     private static final int BASE32_BITS = 5;
     public static final long FIRST_BIT_FLAGGED = 0x8000000000000000l;
     private static final char[] base32 = {'0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'b', 'c', 'd', 'e', 'f',
@@ -53,90 +49,40 @@ public final class GeoHash implements Comparable<GeoHash> {
                 throw new IllegalArgumentException(binaryString + " is not a valid geohash as a binary string");
             }
         }
-        geohash.bits <<= (64 - geohash.significantBits);
-        long[] latitudeBits = geohash.getRightAlignedLatitudeBits();
-        long[] longitudeBits = geohash.getRightAlignedLongitudeBits();
-        return geohash.recombineLatLonBitsToHash(latitudeBits, longitudeBits);
+        return fromBits(geohash.bits << (64 - geohash.significantBits), geohash.significantBits);
     }
 
     public static GeoHash fromGeohashString(String geohash) {
-        double[] latitudeRange = Arrays.copyOf(WORLD[0], 2);
-        double[] longitudeRange = Arrays.copyOf(WORLD[1], 2);
-
-        boolean isEvenBit = true;
-        GeoHash hash = new GeoHash();
-
-        for (int i = 0; i < geohash.length(); i++) {
-            int cd = decodeMap.get(geohash.charAt(i));
-            for (int j = 0; j < BASE32_BITS; j++) {
-                int mask = BITS[j];
-                if (isEvenBit) {
-                    divideRangeDecode(hash, longitudeRange, (cd & mask) != 0);
-                } else {
-                    divideRangeDecode(hash, latitudeRange, (cd & mask) != 0);
-                }
-                isEvenBit = !isEvenBit;
-            }
+        byte[] buf = new byte[geohash.length()];
+        for (int i = 0; i < buf.length; i++) {
+            buf[i] = (byte) geohash.charAt(i);
         }
-
-        double latitude = (latitudeRange[0] + latitudeRange[1]) / 2;
-        double longitude = (longitudeRange[0] + longitudeRange[1]) / 2;
-        hash.point = new Coordinate(latitude, longitude);
-        setBoundingBox(hash, latitudeRange, longitudeRange);
-        hash.bits <<= (64 - hash.significantBits);
-        return hash;
+        return fromLongValue(GeoHashUtils.fromBase32(buf, 0, buf.length), buf.length);
     }
 
     public static GeoHash fromLongValue(long hashVal, int charSize) {
-        double[] latitudeRange = Arrays.copyOf(WORLD[0], 2);
-        double[] longitudeRange = Arrays.copyOf(WORLD[1], 2);
+        return fromBits(hashVal, BASE32_BITS * charSize);
+    }
 
-        boolean isEvenBit = true;
+    private static GeoHash fromBits(long hashVal, int numBits) {
         GeoHash hash = new GeoHash();
-
-        String binaryString = Long.toBinaryString(hashVal);
-        while (binaryString.length() < 64) {
-            binaryString = "0" + binaryString;
-        }
-        for (int j = 0; j < BASE32_BITS * charSize; j++) {
-            if (isEvenBit) {
-                divideRangeDecode(hash, longitudeRange, binaryString.charAt(j) != '0');
-            } else {
-                divideRangeDecode(hash, latitudeRange, binaryString.charAt(j) != '0');
-            }
-            isEvenBit = !isEvenBit;
-        }
-
-        double latitude = (latitudeRange[0] + latitudeRange[1]) / 2;
-        double longitude = (longitudeRange[0] + longitudeRange[1]) / 2;
-
-        hash.point = new Coordinate(latitude, longitude);
-        setBoundingBox(hash, latitudeRange, longitudeRange);
-        hash.bits <<= (64 - hash.significantBits);
+        hash.significantBits = (byte) numBits;
+        hash.bits = numBits == 0 ? 0 : hashVal & (0xffffffffffffffffl << (64 - numBits));
+        double[] bounds = new double[4];
+        GeoHashUtils.decodeBits(hash.bits, numBits, bounds);
+        hash.boundingBox = new Envelope(bounds[0], bounds[1], bounds[2], bounds[3]);
+        hash.point = new Coordinate((bounds[2] + bounds[3]) / 2, (bounds[0] + bounds[1]) / 2);
         return hash;
     }
 
     private GeoHash(double latitude, double longitude, int desiredPrecision) {
         point = new Coordinate(latitude, longitude);
         desiredPrecision = Math.min(desiredPrecision, 64);
-        boolean isEvenBit = true;
-        double[] latitudeRange = Arrays.copyOf(WORLD[0], 2);
-        double[] longitudeRange = Arrays.copyOf(WORLD[1], 2);
-
-        while (significantBits < desiredPrecision) {
-            if (isEvenBit) {
-                divideRangeEncode(longitude, longitudeRange);
-            } else {
-                divideRangeEncode(latitude, latitudeRange);
-            }
-            isEvenBit = !isEvenBit;
-        }
-        setBoundingBox(this, latitudeRange, longitudeRange);
-        bits <<= (64 - desiredPrecision);
-    }
-
-    private static void setBoundingBox(GeoHash hash, double[] latitudeRange, double[] longitudeRange) {
-        hash.boundingBox = new Envelope(longitudeRange[0], longitudeRange[1], latitudeRange[0], latitudeRange[1]);
+        significantBits = (byte) desiredPrecision;
+        bits = GeoHashUtils.encodeBits(latitude, longitude, desiredPrecision);
+        double[] bounds = new double[4];
+        GeoHashUtils.decodeBits(bits, desiredPrecision, bounds);
+        boundingBox = new Envelope(bounds[0], bounds[1], bounds[2], bounds[3]);
     }
 
     public GeoHash next(int step) {
@@ -177,28 +123,6 @@ public final class GeoHash implements Comparable<GeoHash> {
         return two.ord() - one.ord();
     }
 
-    private void divideRangeEncode(double value, double[] range) {
-        double mid = (range[0] + range[1]) / 2;
-        if (value >= mid) {
-            addOnBitToEnd();
-            range[0] = mid;
-        } else {
-            addOffBitToEnd();
-            range[1] = mid;
-        }
-    }
-
-    private static void divideRangeDecode(GeoHash hash, double[] range, boolean b) {
-        double mid = (range[0] + range[1]) / 2;
-        if (b) {
-            hash.addOnBitToEnd();
-            range[0] = mid;
-        } else {
-            hash.addOffBitToEnd();
-            range[1] = mid;
-        }
-    }
-
     public GeoHash[] getAdjacent() {
         GeoHash northern = getNorthernNeighbour();
         GeoHash eastern = getEasternNeighbour();
@@ -209,6 +133,21 @@ public final class GeoHash implements Comparable<GeoHash> {
             southern.getWesternNeighbour(), western, northern.getWesternNeighbour()};
     }
 
+    /**
+     * 获取base32字符的下一个字符，z之后没有下一个字符时返回0
+     * <p>
+     * @param c
+     *          <p>
+     * @return
+     */
+    public static char nextBase32(char c) {
+        Integer i = decodeMap.get(c);
+        if (i == null || i + 1 >= base32.length) {
+            return 0;
+        }
+        return base32[i + 1];
+    }
+
     public int significantBits() {
         return significantBits;
     }
@@ -222,16 +161,7 @@ public final class GeoHash implements Comparable<GeoHash> {
             return "";
         }
         if (token == null) {
-            StringBuilder buf = new StringBuilder();
-            long firstFiveBitsMask = 0xf800000000000000l;
-            long bitsCopy = bits;
-            int partialChunks = (int) Math.ceil(((double) significantBits / 5));
-            for (int i = 0; i < partialChunks; i++) {
-                int pointer = (int) ((bitsCopy & firstFiveBitsMask) >>> 59);
-                buf.append(base32[pointer]);
-                bitsCopy <<= 5;
-            }
-            token = buf.toString();
+            token = GeoHashUtils.toBase32(bits, significantBits / BASE32_BITS);
         }
         return token;
     }
@@ -260,93 +190,20 @@ public final class GeoHash implements Comparable<GeoHash> {
         return false;
     }
 
-    protected GeoHash recombineLatLonBitsToHash(long[] latBits, long[] lonBits) {
-        GeoHash hash = new GeoHash();
-        boolean isEvenBit = false;
-        latBits[0] <<= (64 - latBits[1]);
-        lonBits[0] <<= (64 - lonBits[1]);
-        double[] latitudeRange = Arrays.copyOf(WORLD[0], 2);
-        double[] longitudeRange = Arrays.copyOf(WORLD[1], 2);
-
-        for (int i = 0; i < latBits[1] + lonBits[1]; i++) {
-            if (isEvenBit) {
-                divideRangeDecode(hash, latitudeRange, (latBits[0] & FIRST_BIT_FLAGGED) == FIRST_BIT_FLAGGED);
-                latBits[0] <<= 1;
-            } else {
-                divideRangeDecode(hash, longitudeRange, (lonBits[0] & FIRST_BIT_FLAGGED) == FIRST_BIT_FLAGGED);
-                lonBits[0] <<= 1;
-            }
-            isEvenBit = !isEvenBit;
-        }
-        hash.bits <<= (64 - hash.significantBits);
-        setBoundingBox(hash, latitudeRange, longitudeRange);
-        hash.point = hash.boundingBox.centre();
-        return hash;
-    }
-
     public GeoHash getNorthernNeighbour() {
-        long[] latitudeBits = getRightAlignedLatitudeBits();
-        long[] longitudeBits = getRightAlignedLongitudeBits();
-        latitudeBits[0] += 1;
-        latitudeBits[0] = maskLastNBits(latitudeBits[0], latitudeBits[1]);
-        return recombineLatLonBitsToHash(latitudeBits, longitudeBits);
+        return fromBits(GeoHashUtils.neighbourBits(bits, significantBits, 1, 0), significantBits);
     }
 
     public GeoHash getSouthernNeighbour() {
-        long[] latitudeBits = getRightAlignedLatitudeBits();
-        long[] longitudeBits = getRightAlignedLongitudeBits();
-        latitudeBits[0] -= 1;
-        latitudeBits[0] = maskLastNBits(latitudeBits[0], latitudeBits[1]);
-        return recombineLatLonBitsToHash(latitudeBits, longitudeBits);
+        return fromBits(GeoHashUtils.neighbourBits(bits, significantBits, -1, 0), significantBits);
     }
 
     public GeoHash getEasternNeighbour() {
-        long[] latitudeBits = getRightAlignedLatitudeBits();
-        long[] longitudeBits = getRightAlignedLongitudeBits();
-        longitudeBits[0] += 1;
-        longitudeBits[0] = maskLastNBits(longitudeBits[0], longitudeBits[1]);
-        return recombineLatLonBitsToHash(latitudeBits, longitudeBits);
+        return fromBits(GeoHashUtils.neighbourBits(bits, significantBits, 0, 1), significantBits);
     }
 
     public GeoHash getWesternNeighbour() {
-        long[] latitudeBits = getRightAlignedLatitudeBits();
-        long[] longitudeBits = getRightAlignedLongitudeBits();
-        longitudeBits[0] -= 1;
-        longitudeBits[0] = maskLastNBits(longitudeBits[0], longitudeBits[1]);
-        return recombineLatLonBitsToHash(latitudeBits, longitudeBits);
-    }
-
-    protected long[] getRightAlignedLatitudeBits() {
-        long copyOfBits = bits << 1;
-        long value = extractEverySecondBit(copyOfBits, getNumberOfLatLonBits()[0]);
-        return new long[]{value, getNumberOfLatLonBits()[0]};
-    }
-
-    protected long[] getRightAlignedLongitudeBits() {
-        long copyOfBits = bits;
-        long value = extractEverySecondBit(copyOfBits, getNumberOfLatLonBits()[1]);
-        return new long[]{value, getNumberOfLatLonBits()[1]};
-    }
-
-    private long extractEverySecondBit(long copyOfBits, int numberOfBits) {
-        long value = 0;
-        for (int i = 0; i < numberOfBits; i++) {
-            if ((copyOfBits & FIRST_BIT_FLAGGED) == FIRST_BIT_FLAGGED) {
-                value |= 0x1;
-            }
-            value <<= 1;
-            copyOfBits <<= 2;
-        }
-        value >>>= 1;
-        return value;
-    }
-
-    protected int[] getNumberOfLatLonBits() {
-        if (significantBits % 2 == 0) {
-            return new int[]{significantBits / 2, significantBits / 2};
-        } else {
-            return new int[]{significantBits / 2, significantBits / 2 + 1};
-        }
+        return fromBits(GeoHashUtils.neighbourBits(bits, significantBits, 0, -1), significantBits);
     }
 
     protected final void addOnBitToEnd() {
@@ -415,12 +272,6 @@ public final class GeoHash implements Comparable<GeoHash> {
         }
     }
 
-    private long maskLastNBits(long value, long n) {
-        long mask = 0xffffffffffffffffl;
-        mask >>>= (64 - n);
-        return value & mask;
-    }
-
     @Override
     public int compareTo(GeoHash o) {
         return new Long(bits).compareTo(o.bits);
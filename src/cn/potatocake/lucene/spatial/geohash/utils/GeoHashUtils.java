@@ -0,0 +1,296 @@
+package cn.potatocake.lucene.spatial.geohash.utils;
+
+import java.util.Arrays;
+
+/**
+ * 基于long的GeoHash基础运算，所有方法均不创建对象，结果写入调用方提供的数组
+ * <p>
+ * hash值与GeoHash.longValue()一致，即有效位左对齐，精度以base32字符数表示
+ * <p>
+ * @author Potato-Cake（potato_cake@163.com）
+ */
+public final class GeoHashUtils {
+
+    public static final int MAX_CHAR_SIZE = 12; // long能容纳的最大字符数
+    public static final int BASE32_BITS = 5;
+    private static final byte[] BASE32 = {'0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'b', 'c', 'd', 'e', 'f',
+        'g', 'h', 'j', 'k', 'm', 'n', 'p', 'q', 'r', 's', 't', 'u', 'v', 'w', 'x', 'y', 'z'};
+    private static final byte[] DECODE = new byte[128];
+    // 邻居方向（纬度增量、经度增量），顺序与GeoHash.getAdjacent()一致：北、东北、东、东南、南、西南、西、西北
+    private static final int[][] ADJACENT = {{1, 0}, {1, 1}, {0, 1}, {-1, 1}, {-1, 0}, {-1, -1}, {0, -1}, {1, -1}};
+
+    static {
+        Arrays.fill(DECODE, (byte) -1);
+        for (int i = 0; i < BASE32.length; i++) {
+            DECODE[BASE32[i]] = (byte) i;
+        }
+    }
+
+    private GeoHashUtils() {
+    }
+
+    /**
+     * 根据经纬度计算hash值
+     * <p>
+     * @param latitude
+     * @param longitude
+     * @param charSize  base32字符数，1～12
+     *                  <p>
+     * @return
+     */
+    public static long encode(double latitude, double longitude, int charSize) {
+        return encodeBits(latitude, longitude, BASE32_BITS * charSize);
+    }
+
+    /**
+     * 计算hash值对应的栅格范围
+     * <p>
+     * @param bits
+     * @param charSize
+     * @param bounds   输出：{minX, maxX, minY, maxY}，即经度最小、最大值，纬度最小、最大值
+     */
+    public static void decode(long bits, int charSize, double[] bounds) {
+        decodeBits(bits, BASE32_BITS * charSize, bounds);
+    }
+
+    public static long ord(long bits, int charSize) {
+        return bits >>> (64 - BASE32_BITS * charSize);
+    }
+
+    public static long fromOrd(long ord, int charSize) {
+        int numBits = BASE32_BITS * charSize;
+        return (ord << (64 - numBits)) & mask(numBits);
+    }
+
+    /**
+     * Z序中的下一个栅格
+     */
+    public static long next(long bits, int charSize) {
+        return fromOrd(ord(bits, charSize) + 1, charSize);
+    }
+
+    /**
+     * Z序中的上一个栅格
+     */
+    public static long prev(long bits, int charSize) {
+        return fromOrd(ord(bits, charSize) - 1, charSize);
+    }
+
+    /**
+     * 计算相邻栅格，经纬度方向越界时回绕
+     * <p>
+     * @param bits
+     * @param charSize
+     * @param dLat     纬度方向偏移的栅格数
+     * @param dLon     经度方向偏移的栅格数
+     *                 <p>
+     * @return
+     */
+    public static long neighbour(long bits, int charSize, int dLat, int dLon) {
+        return neighbourBits(bits, BASE32_BITS * charSize, dLat, dLon);
+    }
+
+    /**
+     * 计算8个相邻栅格，顺序与GeoHash.getAdjacent()一致
+     * <p>
+     * @param bits
+     * @param charSize
+     * @param adjacent 输出，长度至少为8
+     */
+    public static void neighbours(long bits, int charSize, long[] adjacent) {
+        int numBits = BASE32_BITS * charSize;
+        for (int i = 0; i < ADJACENT.length; i++) {
+            adjacent[i] = neighbourBits(bits, numBits, ADJACENT[i][0], ADJACENT[i][1]);
+        }
+    }
+
+    /**
+     * 将hash值写为base32字符
+     * <p>
+     * @param bits
+     * @param charSize
+     * @param buf
+     * @param offset
+     *                 <p>
+     * @return 写入的字符数
+     */
+    public static int toBase32(long bits, int charSize, byte[] buf, int offset) {
+        for (int i = 0; i < charSize; i++) {
+            buf[offset + i] = BASE32[(int) (bits >>> 59)];
+            bits <<= BASE32_BITS;
+        }
+        return charSize;
+    }
+
+    public static int toBase32(long bits, int charSize, char[] buf, int offset) {
+        for (int i = 0; i < charSize; i++) {
+            buf[offset + i] = (char) BASE32[(int) (bits >>> 59)];
+            bits <<= BASE32_BITS;
+        }
+        return charSize;
+    }
+
+    public static String toBase32(long bits, int charSize) {
+        char[] buf = new char[charSize];
+        toBase32(bits, charSize, buf, 0);
+        return new String(buf);
+    }
+
+    /**
+     * 将base32字符解析为hash值
+     * <p>
+     * @param buf
+     * @param offset
+     * @param length 字符数，即精度
+     *               <p>
+     * @return
+     */
+    public static long fromBase32(byte[] buf, int offset, int length) {
+        if (length > MAX_CHAR_SIZE) {
+            throw new IllegalArgumentException("geohash is longer than " + MAX_CHAR_SIZE + " chars");
+        }
+        long bits = 0;
+        for (int i = 0; i < length; i++) {
+            byte b = buf[offset + i];
+            int v = b < 0 ? -1 : DECODE[b];
+            if (v < 0) {
+                throw new IllegalArgumentException("invalid geohash char: " + (char) b);
+            }
+            bits |= ((long) v) << (59 - BASE32_BITS * i);
+        }
+        return bits;
+    }
+
+    /**
+     * 获取栅格宽、高均不超过指定值（单位：度）的最小字符数，均无法满足时返回最大字符数
+     * <p>
+     * @param width
+     * @param height
+     *               <p>
+     * @return
+     */
+    public static int lookupCharSize(double width, double height) {
+        for (int charSize = 1; charSize < MAX_CHAR_SIZE; charSize++) {
+            int numBits = BASE32_BITS * charSize;
+            double cellWidth = 360.0 / (1L << ((numBits + 1) >>> 1));
+            double cellHeight = 180.0 / (1L << (numBits >>> 1));
+            if (cellWidth <= width && cellHeight <= height) {
+                return charSize;
+            }
+        }
+        return MAX_CHAR_SIZE;
+    }
+
+    public static boolean isBase32(byte b) {
+        return b >= 0 && DECODE[b] >= 0;
+    }
+
+    static long encodeBits(double latitude, double longitude, int numBits) {
+        int lonBits = (numBits + 1) >>> 1;
+        int latBits = numBits >>> 1;
+        long lon = quantize(longitude, -180.0, 360.0, lonBits);
+        long lat = quantize(latitude, -90.0, 180.0, latBits);
+        return interleave(lat, lon, numBits) << (64 - numBits);
+    }
+
+    static void decodeBits(long bits, int numBits, double[] bounds) {
+        int lonBits = (numBits + 1) >>> 1;
+        int latBits = numBits >>> 1;
+        long ord = numBits == 0 ? 0 : bits >>> (64 - numBits);
+        long lon, lat;
+        if ((numBits & 1) == 0) {
+            lon = compact(ord >>> 1);
+            lat = compact(ord);
+        } else {
+            lon = compact(ord);
+            lat = compact(ord >>> 1);
+        }
+        double lonSize = 360.0 / (1L << lonBits);
+        double latSize = 180.0 / (1L << latBits);
+        bounds[0] = -180.0 + lon * lonSize;
+        bounds[1] = -180.0 + (lon + 1) * lonSize;
+        bounds[2] = -90.0 + lat * latSize;
+        bounds[3] = -90.0 + (lat + 1) * latSize;
+    }
+
+    static long neighbourBits(long bits, int numBits, int dLat, int dLon) {
+        int lonBits = (numBits + 1) >>> 1;
+        int latBits = numBits >>> 1;
+        long ord = numBits == 0 ? 0 : bits >>> (64 - numBits);
+        long lon, lat;
+        if ((numBits & 1) == 0) {
+            lon = compact(ord >>> 1);
+            lat = compact(ord);
+        } else {
+            lon = compact(ord);
+            lat = compact(ord >>> 1);
+        }
+        lon = (lon + dLon) & ((1L << lonBits) - 1);
+        lat = (lat + dLat) & ((1L << latBits) - 1);
+        return numBits == 0 ? 0 : interleave(lat, lon, numBits) << (64 - numBits);
+    }
+
+    /**
+     * 二分法等价的量化，边界值按二分法规则（大于等于中点取1）修正浮点误差
+     */
+    private static long quantize(double value, double min, double span, int numBits) {
+        if (numBits == 0) {
+            return 0;
+        }
+        long cells = 1L << numBits;
+        double size = span / cells;
+        long i = (long) Math.floor((value - min) / size);
+        if (i < 0) {
+            i = 0;
+        } else if (i >= cells) {
+            i = cells - 1;
+        }
+        if (i > 0 && value < min + i * size) {
+            i--;
+        } else if (i < cells - 1 && value >= min + (i + 1) * size) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * 交叉合并经纬度位，经度位在前
+     */
+    private static long interleave(long lat, long lon, int numBits) {
+        if ((numBits & 1) == 0) {
+            return (spread(lon) << 1) | spread(lat);
+        } else {
+            return spread(lon) | (spread(lat) << 1);
+        }
+    }
+
+    /**
+     * 将低32位分散到偶数位上
+     */
+    private static long spread(long v) {
+        v &= 0x00000000FFFFFFFFL;
+        v = (v | (v << 16)) & 0x0000FFFF0000FFFFL;
+        v = (v | (v << 8)) & 0x00FF00FF00FF00FFL;
+        v = (v | (v << 4)) & 0x0F0F0F0F0F0F0F0FL;
+        v = (v | (v << 2)) & 0x3333333333333333L;
+        v = (v | (v << 1)) & 0x5555555555555555L;
+        return v;
+    }
+
+    /**
+     * spread的逆运算，取出偶数位
+     */
+    private static long compact(long v) {
+        v &= 0x5555555555555555L;
+        v = (v | (v >>> 1)) & 0x3333333333333333L;
+        v = (v | (v >>> 2)) & 0x0F0F0F0F0F0F0F0FL;
+        v = (v | (v >>> 4)) & 0x00FF00FF00FF00FFL;
+        v = (v | (v >>> 8)) & 0x0000FFFF0000FFFFL;
+        v = (v | (v >>> 16)) & 0x00000000FFFFFFFFL;
+        return v;
+    }
+
+    private static long mask(int numBits) {
+        return numBits == 0 ? 0 : 0xffffffffffffffffL << (64 - numBits);
+    }
+}
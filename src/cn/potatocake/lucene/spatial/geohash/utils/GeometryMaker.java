@@ -7,9 +7,14 @@ import com.vividsolutions.jts.geom.Geometry;
 import com.vividsolutions.jts.geom.GeometryFactory;
 import com.vividsolutions.jts.geom.LineString;
 import com.vividsolutions.jts.geom.Point;
+import com.vividsolutions.jts.io.InStream;
 import com.vividsolutions.jts.io.ParseException;
+import com.vividsolutions.jts.io.WKBReader;
+import com.vividsolutions.jts.io.WKBWriter;
 import com.vividsolutions.jts.io.WKTReader;
+import java.io.IOException;
 import org.apache.lucene.document.Document;
+import org.apache.lucene.util.BytesRef;
 
 /**
  * 图形构建工具类
@@ -19,7 +24,14 @@ import org.apache.lucene.document.Document;
 public class GeometryMaker {
 
     private static final GeometryFactory GEOMETRY_FACTORY = new GeometryFactory();
-    private static final WKTReader WKT_READER = new WKTReader();
+    // WKTReader非线程安全，每个线程使用独立实例
+    private static final ThreadLocal<WKTReader> WKT_READER = new ThreadLocal<WKTReader>() {
+
+        @Override
+        protected WKTReader initialValue() {
+            return newWKTReader();
+        }
+    };
 
     /**
      * 从lucene文档获取图形
@@ -29,15 +41,67 @@ public class GeometryMaker {
      * @return
      */
     public static Geometry fromDocument(Document doc) {
+        return fromDocument(WKT_READER.get(), doc);
+    }
+
+    /**
+     * 使用指定的WKTReader从lucene文档获取图形，WKTReader需由调用方保证独占使用
+     * <p>
+     * @param reader
+     * @param doc
+     *               <p>
+     * @return
+     */
+    public static Geometry fromDocument(WKTReader reader, Document doc) {
+        String wkt = doc.get(GeohashTreeSpatialStrategy.SHAPE_FIELD_NAME);
+        if (wkt == null) {
+            return null;
+        }
         try {
-            return readWKT(doc.get(GeohashTreeSpatialStrategy.SHAPE_FIELD_NAME));
+            return reader.read(wkt);
         } catch (ParseException ex) {
             return null;
         }
     }
 
     public static Geometry readWKT(String wkt) throws ParseException {
-        return WKT_READER.read(wkt);
+        return WKT_READER.get().read(wkt);
+    }
+
+    public static WKTReader newWKTReader() {
+        return new WKTReader(GEOMETRY_FACTORY);
+    }
+
+    /**
+     * 将图形编码为WKB二进制格式
+     * <p>
+     * @param shape
+     *              <p>
+     * @return
+     */
+    public static byte[] toWKB(Geometry shape) {
+        return new WKBWriter().write(shape);
+    }
+
+    /**
+     * 从WKB二进制数据解析图形，WKBReader非线程安全，需由调用方保证独占使用
+     * <p>
+     * @param reader
+     * @param bytes
+     *               <p>
+     * @return
+     * @throws IOException
+     */
+    public static Geometry readWKB(WKBReader reader, BytesRef bytes) throws IOException {
+        try {
+            return reader.read(new BytesRefInStream(bytes));
+        } catch (ParseException ex) {
+            return null;
+        }
+    }
+
+    public static WKBReader newWKBReader() {
+        return new WKBReader(GEOMETRY_FACTORY);
     }
 
     public static Geometry toGeometry(Envelope envelope) {
@@ -64,4 +128,36 @@ public class GeometryMaker {
         return center.buffer(distance * DistanceUtils.KM_TO_DEG);
     }
 
+    /**
+     * 球面上的圆，用于GeohashTreeSpatialStrategy.makeFilter(Circle)，按球面距离查询，不生成多边形
+     * <p>
+     * @param x        中心点经度
+     * @param y        中心点纬度
+     * @param radiusKM 半径（公里）
+     *                 <p>
+     * @return
+     */
+    public static Circle makeCircle(double x, double y, double radiusKM) {
+        return new Circle(x, y, radiusKM);
+    }
+
+    private static final class BytesRefInStream implements InStream {
+
+        private final BytesRef bytes;
+        private int pos;
+
+        BytesRefInStream(BytesRef bytes) {
+            this.bytes = bytes;
+            this.pos = bytes.offset;
+        }
+
+        @Override
+        public void read(byte[] buf) throws IOException {
+            if (pos + buf.length > bytes.offset + bytes.length) {
+                throw new IOException("Unexpected end of WKB data");
+            }
+            System.arraycopy(bytes.bytes, pos, buf, 0, buf.length);
+            pos += buf.length;
+        }
+    }
 }
@@ -0,0 +1,59 @@
+package cn.potatocake.lucene.spatial.geohash.utils;
+
+import cn.potatocake.lucene.spatial.geohash.GeohashTreeSpatialStrategy;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.io.WKBReader;
+import com.vividsolutions.jts.io.WKTReader;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Set;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.AtomicReader;
+import org.apache.lucene.index.BinaryDocValues;
+import org.apache.lucene.util.BytesRef;
+
+/**
+ * 按段读取文档图形，优先使用BinaryDocValues中的WKB数据，不存在时读取WKT字段
+ * <p>
+ * 非线程安全，每个段、每个线程使用独立实例
+ * <p>
+ * @author Potato-Cake（potato_cake@163.com）
+ */
+public class ShapeReader {
+
+    private static final Set<String> SHAPE_FIELDS = Collections.singleton(GeohashTreeSpatialStrategy.SHAPE_FIELD_NAME);
+    private final AtomicReader reader;
+    private final BinaryDocValues shapeValues;
+    private WKBReader wkbReader;
+    private WKTReader wktReader;
+
+    public ShapeReader(AtomicReader reader) throws IOException {
+        this.reader = reader;
+        this.shapeValues = reader.getBinaryDocValues(GeohashTreeSpatialStrategy.SHAPE_DV_FIELD_NAME);
+    }
+
+    /**
+     * 读取文档图形
+     * <p>
+     * @param docid 段内文档编号
+     *              <p>
+     * @return 文档没有图形或无法解析时返回null
+     * @throws IOException
+     */
+    public Geometry read(int docid) throws IOException {
+        if (shapeValues != null) {
+            BytesRef bytes = shapeValues.get(docid);
+            if (bytes.length > 0) {
+                if (wkbReader == null) {
+                    wkbReader = GeometryMaker.newWKBReader();
+                }
+                return GeometryMaker.readWKB(wkbReader, bytes);
+            }
+        }
+        Document document = reader.document(docid, SHAPE_FIELDS);
+        if (wktReader == null) {
+            wktReader = GeometryMaker.newWKTReader();
+        }
+        return GeometryMaker.fromDocument(wktReader, document);
+    }
+}